@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import com.google.doclava.apicheck.ApiCheck;
+import com.google.doclava.apicheck.ApiInfo;
+import com.google.doclava.apicheck.ApiParseException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the API XML of the generated API, and compares two copies of it, as apicheck does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApiCheckBenchmark {
+  private byte[] mXml;
+  private ApiInfo mOld;
+  private ApiInfo mNew;
+
+  @Setup
+  public void setUp() throws IOException, ApiParseException {
+    FileInputStream in = new FileInputStream(SyntheticApi.get().apiFile);
+    try {
+      ByteArrayOutputStream xml = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8 * 1024];
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+        xml.write(buffer, 0, n);
+      }
+      mXml = xml.toByteArray();
+    } finally {
+      in.close();
+    }
+    mOld = parse();
+    mNew = parse();
+  }
+
+  private ApiInfo parse() throws ApiParseException {
+    return new ApiCheck().parseApi(new ByteArrayInputStream(mXml));
+  }
+
+  @Benchmark
+  public ApiInfo parseApi() throws ApiParseException {
+    return parse();
+  }
+
+  @Benchmark
+  public boolean isConsistent() {
+    return mOld.isConsistent(mNew);
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import com.google.clearsilver.jsilver.data.Data;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the data for the class pages of the whole API, and renders the pages from that data
+ * with class.cs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassPageBenchmark {
+  private ClassInfo[] mClasses;
+  private Data[] mData;
+
+  @Setup
+  public void setUp() throws IOException {
+    mClasses = SyntheticApi.get().classes;
+    mData = new Data[mClasses.length];
+    for (int i = 0; i < mClasses.length; i++) {
+      mData[i] = Doclava.makePackageHDF();
+      mClasses[i].makeHDF(mData[i]);
+    }
+  }
+
+  @Benchmark
+  public void makeHDF(Blackhole bh) {
+    for (ClassInfo cl : mClasses) {
+      Data data = Doclava.makePackageHDF();
+      cl.makeHDF(data);
+      bh.consume(data);
+    }
+  }
+
+  @Benchmark
+  public void render() {
+    for (int i = 0; i < mClasses.length; i++) {
+      ClearPage.write(mData[i], "class.cs", Doclava.javadocDir + mClasses[i].relativePath());
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Escapes comment text with the characters a template set would escape, and source code for
+ * the source pages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EscapeBenchmark {
+  private String[] mText;
+
+  @Setup
+  public void setUp() {
+    // what a template set lists as template.escape.N.key and .value
+    Map<Character, String> chars = new HashMap<Character, String>();
+    chars.put('<', "&lt;");
+    chars.put('>', "&gt;");
+    chars.put('&', "&amp;");
+    chars.put('"', "&quot;");
+    Doclava.setEscapeChars(chars);
+
+    mText = new String[SyntheticApi.METHODS_PER_CLASS + 2];
+    for (int m = 0; m < SyntheticApi.METHODS_PER_CLASS; m++) {
+      mText[m] = SyntheticApi.methodComment(0, m);
+    }
+    // most strings have nothing to escape
+    mText[SyntheticApi.METHODS_PER_CLASS] = "com.google.doclava.SyntheticApi";
+    mText[SyntheticApi.METHODS_PER_CLASS + 1] = "method0(int, java.lang.String)";
+  }
+
+  @Benchmark
+  public void escape(Blackhole bh) {
+    for (String s : mText) {
+      bh.consume(Doclava.escape(s));
+    }
+  }
+
+  @Benchmark
+  public void escapeHtml(Blackhole bh) {
+    for (String s : mText) {
+      bh.consume(SampleTagInfo.escapeHtml(s));
+    }
+  }
+}
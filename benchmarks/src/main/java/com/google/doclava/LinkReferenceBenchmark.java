@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses and resolves the kinds of references found in {@code @link} and {@code @see} tags.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinkReferenceBenchmark {
+  private static final String[] REFERENCES = {
+      "Class3",
+      "Class3#method2(int, String)",
+      "Class3#method2(int, String) the label",
+      "#field1",
+      "#method0(int, String)",
+      SyntheticApi.packageName(1) + ".Class7#field2",
+      SyntheticApi.packageName(2),
+      "java.lang.String#valueOf(int)",
+      "<a href=\"http://example.com/items\">items</a>",
+      "\"Quoted text\"",
+  };
+
+  private ClassInfo mBase;
+  private SourcePositionInfo mPosition;
+
+  @Setup
+  public void setUp() throws IOException {
+    mBase = SyntheticApi.get().classes[0];
+    mPosition = new SourcePositionInfo(mBase.name() + ".java", 100, 1);
+  }
+
+  @Benchmark
+  public void parse(Blackhole bh) {
+    for (String text : REFERENCES) {
+      bh.consume(LinkReference.parse(text, mBase, mPosition, false));
+    }
+  }
+}
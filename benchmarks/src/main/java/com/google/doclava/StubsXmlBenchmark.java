@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the API XML of every class, as -apixml does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StubsXmlBenchmark {
+  private ClassInfo[] mClasses;
+  private Set<ClassInfo> mNotStrippable;
+  private ByteArrayOutputStream mBytes;
+
+  @Setup
+  public void setUp() throws IOException {
+    mClasses = SyntheticApi.get().classes;
+    mNotStrippable = new HashSet<ClassInfo>(Arrays.asList(mClasses));
+    mBytes = new ByteArrayOutputStream(1024 * 1024);
+  }
+
+  @Benchmark
+  public int writeClassXML() {
+    mBytes.reset();
+    PrintStream xmlWriter = new PrintStream(new BufferedOutputStream(mBytes));
+    for (ClassInfo cl : mClasses) {
+      Stubs.writeClassXML(xmlWriter, cl, mNotStrippable);
+    }
+    xmlWriter.flush();
+    return mBytes.size();
+  }
+}
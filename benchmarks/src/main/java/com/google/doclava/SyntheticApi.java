@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A generated API, documented once by a full Doclava run so that the benchmarks can work on the
+ * model it leaves behind. Doclava keeps its model in static fields, so there is one per JVM; JMH
+ * runs each benchmark in a JVM of its own.
+ *
+ * <p>The classes have javadoc of the kind real APIs have: links to other classes and members,
+ * inline code, HTML, and the usual block tags.
+ */
+final class SyntheticApi {
+  static final int PACKAGES = 4;
+  static final int CLASSES_PER_PACKAGE = 25;
+  static final int METHODS_PER_CLASS = 12;
+  static final int FIELDS_PER_CLASS = 6;
+
+  private static SyntheticApi sInstance;
+
+  /** Where the sources, documentation and API file were written. */
+  final File directory;
+
+  /** Doclava's output directory. */
+  final File docsDirectory;
+
+  /** The API file written by -apixml. */
+  final File apiFile;
+
+  /** The generated classes, as Doclava modeled them. */
+  final ClassInfo[] classes;
+
+  private SyntheticApi(File directory, ClassInfo[] classes) {
+    this.directory = directory;
+    this.docsDirectory = new File(directory, "docs");
+    this.apiFile = new File(directory, "api.xml");
+    this.classes = classes;
+  }
+
+  /**
+   * Returns the API, generating and documenting it the first time.
+   */
+  static synchronized SyntheticApi get() throws IOException {
+    if (sInstance != null) {
+      return sInstance;
+    }
+
+    File dir = File.createTempFile("doclava-bench", "");
+    dir.delete();
+    File src = new File(dir, "src");
+    List<String> packages = new ArrayList<String>();
+    for (int p = 0; p < PACKAGES; p++) {
+      String pkg = packageName(p);
+      packages.add(pkg);
+      for (int c = 0; c < CLASSES_PER_PACKAGE; c++) {
+        writeFile(new File(src, pkg.replace('.', File.separatorChar) + File.separator
+            + className(c) + ".java"), classSource(p, c));
+      }
+    }
+
+    List<String> args = new ArrayList<String>();
+    args.add("-quiet");
+    args.add("-sourcepath");
+    args.add(src.getPath());
+    args.add("-d");
+    args.add(new File(dir, "docs").getPath());
+    args.add("-apixml");
+    args.add(new File(dir, "api.xml").getPath());
+    args.add("-hdf");
+    args.add("project.name");
+    args.add("Benchmark");
+    args.addAll(packages);
+    int result = com.sun.tools.javadoc.Main.execute("javadoc", Doclava.class.getName(),
+        SyntheticApi.class.getClassLoader(), args.toArray(new String[args.size()]));
+    if (result != 0) {
+      throw new IllegalStateException("Doclava failed on the generated API in " + dir);
+    }
+
+    List<ClassInfo> classes = new ArrayList<ClassInfo>();
+    for (ClassInfo cl : Converter.rootClasses()) {
+      if (cl.qualifiedName().startsWith("bench.")) {
+        classes.add(cl);
+      }
+    }
+    sInstance = new SyntheticApi(dir, classes.toArray(new ClassInfo[classes.size()]));
+    return sInstance;
+  }
+
+  static String packageName(int p) {
+    return "bench.p" + p;
+  }
+
+  static String className(int c) {
+    return "Class" + c;
+  }
+
+  /**
+   * Returns the javadoc of method {@code m} of class {@code c}, without the comment delimiters.
+   */
+  static String methodComment(int c, int m) {
+    int other = (c + m + 1) % CLASSES_PER_PACKAGE;
+    StringBuilder b = new StringBuilder();
+    b.append("Returns the {@link ").append(className(other)).append("#method")
+        .append(m % METHODS_PER_CLASS).append("(int, String) value} computed from\n");
+    b.append("the {@code count} items named {@code name}. This is slower than\n");
+    b.append("{@link #field").append(m % FIELDS_PER_CLASS).append("} but works for all inputs.\n");
+    b.append("\n");
+    b.append("<p>Items are read in order; see <a href=\"http://example.com/items\">items</a>\n");
+    b.append("for what happens when {@code count < 0}. Use {@link ").append(className(other))
+        .append("} if the items are\n");
+    b.append("already known, or {@linkplain java.lang.String#valueOf(int) convert} them first.\n");
+    b.append("\n");
+    b.append("@param count how many {@link ").append(className(other)).append("}s to read\n");
+    b.append("@param name the name to look for, or {@code null} for all\n");
+    b.append("@return the value, never {@code null}\n");
+    b.append("@throws IllegalStateException if {@link #method0(int, String)} hasn't been called\n");
+    b.append("@see ").append(className(other)).append("#method").append(m % METHODS_PER_CLASS)
+        .append("(int, String)\n");
+    if (m % 5 == 4) {
+      b.append("@deprecated use {@link #method0(int, String)} instead\n");
+    }
+    return b.toString();
+  }
+
+  private static String classSource(int p, int c) {
+    StringBuilder b = new StringBuilder();
+    b.append("package ").append(packageName(p)).append(";\n\n");
+    b.append(javadoc("A generated class for benchmarking, number " + c + " of package {@link "
+        + packageName(p) + "}.\n\n<p>It extends the class before it, so that some members are"
+        + " inherited.\n\n@see " + className((c + 1) % CLASSES_PER_PACKAGE) + "\n", ""));
+    b.append("public class ").append(className(c));
+    if (c % 5 != 0) {
+      b.append(" extends ").append(className(c - 1));
+    }
+    b.append(" {\n");
+    for (int f = 0; f < FIELDS_PER_CLASS; f++) {
+      b.append(javadoc("The {@code field" + f + "} constant, used by {@link #method" + f
+          + "(int, String)}.\n", "  "));
+      b.append("  public static final int field").append(f).append(" = ").append(c * 100 + f)
+          .append(";\n\n");
+    }
+    for (int m = 0; m < METHODS_PER_CLASS; m++) {
+      b.append(javadoc(methodComment(c, m), "  "));
+      if (m % 5 == 4) {
+        b.append("  @Deprecated\n");
+      }
+      b.append("  public String method").append(m).append("(int count, String name) {\n");
+      b.append("    return name + count;\n");
+      b.append("  }\n\n");
+    }
+    b.append("}\n");
+    return b.toString();
+  }
+
+  private static String javadoc(String text, String indent) {
+    StringBuilder b = new StringBuilder();
+    b.append(indent).append("/**\n");
+    for (String line : text.split("\n")) {
+      b.append(indent).append(" * ").append(line).append('\n');
+    }
+    b.append(indent).append(" */\n");
+    return b.toString();
+  }
+
+  private static void writeFile(File file, String content) throws IOException {
+    file.getParentFile().mkdirs();
+    Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+    try {
+      out.write(content);
+    } finally {
+      out.close();
+    }
+  }
+}
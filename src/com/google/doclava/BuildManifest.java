@@ -0,0 +1,354 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import com.google.clearsilver.jsilver.data.Data;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * The record of an incremental documentation build, kept in the output directory. It maps every
+ * file written under the output directory to a fingerprint of the inputs it was made from: the
+ * page's data (the slice of the model it shows, plus the -hdf values), the template it was
+ * rendered with, and the contents of the template directories.
+ *
+ * <p>On the next run, a page whose fingerprint has not changed and whose file still exists is
+ * not rendered again. Files that were written by the previous run but not by this one are stale
+ * and are deleted when the build finishes.
+ */
+public class BuildManifest {
+  public static final String FILENAME = ".doclava-manifest";
+  private static final String HEADER = "# doclava build manifest 1";
+
+  /** Fingerprint recorded for outputs that are always rewritten, such as copied assets. */
+  public static final String UNTRACKED = "-";
+
+  private final File mOutputDir;
+  private final String mOutputPrefix;
+  private final Map<String, String> mPrevious;
+  private final Map<String, String> mCurrent = new HashMap<String, String>();
+  private String mInputs = "";
+  private int mRendered;
+  private int mUpToDate;
+  private int mDeleted;
+
+  private BuildManifest(File outputDir, Map<String, String> previous) {
+    mOutputDir = outputDir;
+    mOutputPrefix = outputDir.getAbsolutePath() + File.separator;
+    mPrevious = previous;
+  }
+
+  /**
+   * Reads the manifest left in {@code outputDir} by the previous build. A missing or unreadable
+   * manifest gives an empty one, which makes every page render.
+   */
+  public static BuildManifest load(String outputDir) {
+    File dir = new File(outputDir);
+    Map<String, String> previous = new HashMap<String, String>();
+    File file = new File(dir, FILENAME);
+    if (file.isFile()) {
+      BufferedReader in = null;
+      try {
+        in = new BufferedReader(new FileReader(file));
+        String line = in.readLine();
+        if (HEADER.equals(line)) {
+          while ((line = in.readLine()) != null) {
+            int tab = line.indexOf('\t');
+            if (tab > 0) {
+              previous.put(line.substring(tab + 1), line.substring(0, tab));
+            }
+          }
+        }
+      } catch (IOException e) {
+        System.err.println("Could not read " + file + ", rebuilding everything: " + e.getMessage());
+        previous.clear();
+      } finally {
+        if (in != null) {
+          try {
+            in.close();
+          } catch (IOException ignored) {}
+        }
+      }
+    }
+    return new BuildManifest(dir, previous);
+  }
+
+  /**
+   * Sets the inputs that every page depends on: the -hdf values and the contents of the
+   * template directories, both on disk and bundled with doclava.
+   */
+  public void setInputs(List<String[]> hdf, List<String> templateDirs,
+      List<String> bundledTemplateDirs) {
+    MessageDigest digest = newDigest();
+    for (String[] pair : hdf) {
+      update(digest, pair[0]);
+      update(digest, pair[1]);
+    }
+    for (String dir : templateDirs) {
+      update(digest, dir);
+      hashDirectory(digest, new File(dir), "");
+    }
+    for (String dir : bundledTemplateDirs) {
+      update(digest, dir);
+      hashBundledDirectory(digest, dir);
+    }
+    mInputs = toHex(digest.digest());
+  }
+
+  /**
+   * Returns the fingerprint of a page rendered from {@code templ} with {@code data}.
+   */
+  public String fingerprint(String templ, Data data) {
+    MessageDigest digest = newDigest();
+    update(digest, mInputs);
+    update(digest, templ);
+    try {
+      data.write(new DigestAppendable(digest), 0);
+    } catch (IOException e) {
+      throw new AssertionError(e); // DigestAppendable doesn't throw
+    }
+    return toHex(digest.digest());
+  }
+
+  /**
+   * Records that {@code file} is produced with {@code fingerprint} and returns true if the
+   * previous build already wrote it from the same inputs, so it need not be written again.
+   */
+  public synchronized boolean isUpToDate(File file, String fingerprint) {
+    String path = relativePath(file);
+    if (path == null) {
+      return false;
+    }
+    mCurrent.put(path, fingerprint);
+    if (!UNTRACKED.equals(fingerprint) && fingerprint.equals(mPrevious.get(path))
+        && file.isFile()) {
+      mUpToDate++;
+      return true;
+    }
+    mRendered++;
+    return false;
+  }
+
+  /**
+   * Records that {@code file} is written by this build, whatever its inputs.
+   */
+  public synchronized void record(File file) {
+    String path = relativePath(file);
+    if (path != null) {
+      mCurrent.put(path, UNTRACKED);
+    }
+  }
+
+  /**
+   * Deletes the files written by the previous build and not by this one, then saves the new
+   * manifest.
+   */
+  public synchronized void finish() {
+    for (String path : mPrevious.keySet()) {
+      if (!mCurrent.containsKey(path)) {
+        File stale = new File(mOutputDir, path);
+        if (stale.isFile() && stale.delete()) {
+          mDeleted++;
+        }
+      }
+    }
+
+    File file = new File(mOutputDir, FILENAME);
+    Writer out = null;
+    try {
+      mOutputDir.mkdirs();
+      out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+      out.write(HEADER);
+      out.write('\n');
+      for (Map.Entry<String, String> entry : new TreeMap<String, String>(mCurrent).entrySet()) {
+        out.write(entry.getValue());
+        out.write('\t');
+        out.write(entry.getKey());
+        out.write('\n');
+      }
+    } catch (IOException e) {
+      System.err.println("error writing build manifest " + file + ": " + e.getMessage());
+    } finally {
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException ignored) {}
+      }
+    }
+  }
+
+  public int renderedCount() {
+    return mRendered;
+  }
+
+  public int upToDateCount() {
+    return mUpToDate;
+  }
+
+  public int deletedCount() {
+    return mDeleted;
+  }
+
+  /**
+   * Returns the path of {@code file} relative to the output directory, using '/' separators, or
+   * null if the file is not under the output directory.
+   */
+  private String relativePath(File file) {
+    String path = file.getAbsolutePath();
+    if (!path.startsWith(mOutputPrefix)) {
+      return null;
+    }
+    return path.substring(mOutputPrefix.length()).replace(File.separatorChar, '/');
+  }
+
+  private static void hashDirectory(MessageDigest digest, File dir, String relative) {
+    File[] files = dir.listFiles();
+    if (files == null) {
+      return;
+    }
+    Arrays.sort(files);
+    for (File f : files) {
+      String name = relative + f.getName();
+      if (f.isDirectory()) {
+        hashDirectory(digest, f, name + "/");
+      } else {
+        update(digest, name);
+        InputStream in = null;
+        try {
+          in = new FileInputStream(f);
+          hashStream(digest, in);
+        } catch (IOException e) {
+          // an unreadable template can't be compared, so make sure nothing matches
+          update(digest, String.valueOf(System.nanoTime()));
+        } finally {
+          if (in != null) {
+            try {
+              in.close();
+            } catch (IOException ignored) {}
+          }
+        }
+      }
+    }
+  }
+
+  private static void hashBundledDirectory(MessageDigest digest, String dir) {
+    JarFile jar = JarUtils.jarForClass(Doclava.class, null);
+    if (jar != null) {
+      String prefix = dir + "/";
+      for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements();) {
+        JarEntry entry = entries.nextElement();
+        if (entry.getName().startsWith(prefix) && !entry.isDirectory()) {
+          update(digest, entry.getName());
+          update(digest, Long.toHexString(entry.getCrc()));
+        }
+      }
+      try {
+        jar.close();
+      } catch (IOException ignored) {}
+      return;
+    }
+
+    URL url = Doclava.class.getResource("/" + dir);
+    if (url != null && "file".equals(url.getProtocol())) {
+      hashDirectory(digest, new File(url.getPath()), "");
+    }
+  }
+
+  private static void hashStream(MessageDigest digest, InputStream in) throws IOException {
+    byte[] buffer = new byte[8 * 1024];
+    int n;
+    while ((n = in.read(buffer)) > 0) {
+      digest.update(buffer, 0, n);
+    }
+  }
+
+  private static void update(MessageDigest digest, String s) {
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      digest.update((byte) (c >> 8));
+      digest.update((byte) c);
+    }
+    digest.update((byte) 0);
+  }
+
+  static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e); // every JRE has MD5
+    }
+  }
+
+  static String toHex(byte[] bytes) {
+    char[] digits = "0123456789abcdef".toCharArray();
+    char[] result = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      result[2 * i] = digits[(bytes[i] >> 4) & 0xf];
+      result[2 * i + 1] = digits[bytes[i] & 0xf];
+    }
+    return new String(result);
+  }
+
+  /**
+   * Feeds whatever is appended to it into a digest, so that a page's data can be fingerprinted
+   * without building it as a string.
+   */
+  private static final class DigestAppendable implements Appendable {
+    private final MessageDigest mDigest;
+
+    DigestAppendable(MessageDigest digest) {
+      mDigest = digest;
+    }
+
+    public Appendable append(CharSequence csq) {
+      return append(csq, 0, csq.length());
+    }
+
+    public Appendable append(CharSequence csq, int start, int end) {
+      for (int i = start; i < end; i++) {
+        append(csq.charAt(i));
+      }
+      return this;
+    }
+
+    public Appendable append(char c) {
+      mDigest.update((byte) (c >> 8));
+      mDigest.update((byte) c);
+      return this;
+    }
+  }
+}
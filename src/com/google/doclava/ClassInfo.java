@@ -62,24 +62,15 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
     super(rawCommentText, position);
 
     mClass = cl;
-    mIsPublic = isPublic;
-    mIsProtected = isProtected;
-    mIsPackagePrivate = isPackagePrivate;
-    mIsPrivate = isPrivate;
-    mIsStatic = isStatic;
-    mIsInterface = isInterface;
-    mIsAbstract = isAbstract;
-    mIsOrdinaryClass = isOrdinaryClass;
-    mIsException = isException;
-    mIsError = isError;
-    mIsEnum = isEnum;
-    mIsAnnotation = isAnnotation;
-    mIsFinal = isFinal;
-    mIsIncluded = isIncluded;
+    mFlags = flag(isPublic, PUBLIC) | flag(isProtected, PROTECTED)
+        | flag(isPackagePrivate, PACKAGE_PRIVATE) | flag(isPrivate, PRIVATE)
+        | flag(isStatic, STATIC) | flag(isInterface, INTERFACE) | flag(isAbstract, ABSTRACT)
+        | flag(isOrdinaryClass, ORDINARY_CLASS) | flag(isException, EXCEPTION)
+        | flag(isError, ERROR) | flag(isEnum, ENUM) | flag(isAnnotation, ANNOTATION)
+        | flag(isFinal, FINAL) | flag(isIncluded, INCLUDED) | flag(isPrimitive, PRIMITIVE);
     mName = name;
     mQualifiedName = qualifiedName;
     mQualifiedTypeName = qualifiedTypeName;
-    mIsPrimitive = isPrimitive;
     mNameParts = name.split("\\.");
   }
 
@@ -89,7 +80,7 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
       PackageInfo containingPackage, ClassInfo containingClass, ClassInfo superclass,
       TypeInfo superclassType, AnnotationInstanceInfo[] annotations) {
     mTypeInfo = typeInfo;
-    mRealInterfaces = new ArrayList<ClassInfo>();
+    mRealInterfaces = new ArrayList<ClassInfo>(interfaces.length);
     for (ClassInfo cl : interfaces) {
       mRealInterfaces.add(cl);
     }
@@ -116,6 +107,8 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
     mSelfFields = null;
     mSelfAttributes = null;
     mDeprecatedKnown = false;
+    mFieldsByName = null;
+    mMethodsByName = null;
 
     Arrays.sort(mEnumConstants, FieldInfo.comparator);
     Arrays.sort(mInnerClasses, ClassInfo.comparator);
@@ -146,7 +139,8 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
       return val != 0;
     } else {
       boolean v =
-          Doclava.checkLevel(mIsPublic, mIsProtected, mIsPackagePrivate, mIsPrivate, isHidden());
+          Doclava.checkLevel(hasFlag(PUBLIC), hasFlag(PROTECTED), hasFlag(PACKAGE_PRIVATE),
+              hasFlag(PRIVATE), isHidden());
       mCheckLevel = v ? 1 : 0;
       return v;
     }
@@ -166,31 +160,31 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
   }
 
   public boolean isPublic() {
-    return mIsPublic;
+    return hasFlag(PUBLIC);
   }
 
   public boolean isProtected() {
-    return mIsProtected;
+    return hasFlag(PROTECTED);
   }
 
   public boolean isPackagePrivate() {
-    return mIsPackagePrivate;
+    return hasFlag(PACKAGE_PRIVATE);
   }
 
   public boolean isPrivate() {
-    return mIsPrivate;
+    return hasFlag(PRIVATE);
   }
 
   public boolean isStatic() {
-    return mIsStatic;
+    return hasFlag(STATIC);
   }
 
   public boolean isInterface() {
-    return mIsInterface;
+    return hasFlag(INTERFACE);
   }
 
   public boolean isAbstract() {
-    return mIsAbstract;
+    return hasFlag(ABSTRACT);
   }
 
   public PackageInfo containingPackage() {
@@ -202,27 +196,27 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
   }
 
   public boolean isOrdinaryClass() {
-    return mIsOrdinaryClass;
+    return hasFlag(ORDINARY_CLASS);
   }
 
   public boolean isException() {
-    return mIsException;
+    return hasFlag(EXCEPTION);
   }
 
   public boolean isError() {
-    return mIsError;
+    return hasFlag(ERROR);
   }
 
   public boolean isEnum() {
-    return mIsEnum;
+    return hasFlag(ENUM);
   }
 
   public boolean isAnnotation() {
-    return mIsAnnotation;
+    return hasFlag(ANNOTATION);
   }
 
   public boolean isFinal() {
-    return mIsFinal;
+    return hasFlag(FINAL);
   }
 
   /**
@@ -230,7 +224,7 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
    * locally, and thus will be included in local documentation.
    */
   public boolean isDefinedLocally() {
-    return mIsIncluded;
+    return hasFlag(INCLUDED);
   }
 
   public HashSet<String> typeVariables() {
@@ -306,7 +300,7 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
   }
 
   public boolean isPrimitive() {
-    return mIsPrimitive;
+    return hasFlag(PRIMITIVE);
   }
 
   public MethodInfo[] allConstructors() {
@@ -534,7 +528,11 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
   }
 
   public void addMethod(MethodInfo method) {
+    if (mApiCheckMethods == null) {
+      mApiCheckMethods = new HashMap<String, MethodInfo>();
+    }
     mApiCheckMethods.put(method.getHashableName(), method);
+    mMethodsByName = null;
     
     if (mAllSelfMethods == null) {
       mAllSelfMethods = new MethodInfo[] { method };
@@ -1198,21 +1196,10 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
   }
 
   public MethodInfo findMethod(String name, String[] params, String[] dimensions, boolean varargs) {
-    // first look on our class, and our superclasses
-	  MethodInfo rv;
-
-    // for methods
-    if (mAllSelfMethods != null) {
-      rv = matchMethod(methods(), name, params, dimensions, varargs);
-
-      if (rv != null) {
-        return rv;
-      }
-    }
-
-    // for constructors
-    if (mAllConstructors != null) {
-      rv = matchMethod(constructors(), name, params, dimensions, varargs);
+    // first look on our class, and our superclasses, for methods and then constructors
+    MethodInfo[] methods = methodsByName().get(name);
+    if (methods != null) {
+      MethodInfo rv = matchMethod(methods, name, params, dimensions, varargs);
       if (rv != null) {
         return rv;
       }
@@ -1226,7 +1213,45 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
 
     return null;
   }
-  
+
+  /**
+   * Returns the methods and then the constructors that {@link #findMethod} looks through, by
+   * name. The map is kept once both have been set.
+   */
+  private HashMap<String, MethodInfo[]> methodsByName() {
+    if (mMethodsByName != null) {
+      return mMethodsByName;
+    }
+    HashMap<String, ArrayList<MethodInfo>> lists = new HashMap<String, ArrayList<MethodInfo>>();
+    if (mAllSelfMethods != null) {
+      addByName(methods(), lists);
+    }
+    if (mAllConstructors != null) {
+      addByName(constructors(), lists);
+    }
+    HashMap<String, MethodInfo[]> byName = new HashMap<String, MethodInfo[]>();
+    for (Map.Entry<String, ArrayList<MethodInfo>> e : lists.entrySet()) {
+      ArrayList<MethodInfo> list = e.getValue();
+      byName.put(e.getKey(), list.toArray(new MethodInfo[list.size()]));
+    }
+    if (mAllSelfMethods != null && mAllConstructors != null) {
+      mMethodsByName = byName;
+    }
+    return byName;
+  }
+
+  private static void addByName(MethodInfo[] methods,
+      HashMap<String, ArrayList<MethodInfo>> lists) {
+    for (MethodInfo method : methods) {
+      ArrayList<MethodInfo> list = lists.get(method.name());
+      if (list == null) {
+        list = new ArrayList<MethodInfo>(1);
+        lists.put(method.name(), list);
+      }
+      list.add(method);
+    }
+  }
+
   /**
    * Returns true if the given method's signature is available in this class,
    * either directly or via inheritance.
@@ -1265,39 +1290,56 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
   }
 
   public ClassInfo findClass(String className) {
-    return Converter.obtainClass(mClass.findClass(className));
+    return SymbolIndex.classNamedIn(this, className);
   }
 
   public ClassInfo findInnerClass(String className) {
+    return SymbolIndex.innerClassNamedIn(this, className);
+  }
+
+  /**
+   * Lets go of the javadoc class this was converted from. Names looked up in it after this are
+   * only found if they were looked up before; see {@link Converter#releaseJavadoc}.
+   */
+  void releaseJavadoc() {
+    mClass = null;
+  }
+
+  ClassInfo lookUpClass(String className) {
+    if (mClass == null) {
+      return null;
+    }
+    synchronized (Converter.LOCK) {
+      return Converter.obtainClass(mClass.findClass(className));
+    }
+  }
+
+  ClassInfo lookUpInnerClass(String className) {
+    if (mClass == null) {
+      return null;
+    }
     // ClassDoc.findClass won't find inner classes. To deal with that,
     // we try what they gave us first, but if that didn't work, then
     // we see if there are any periods in className, and start searching
     // from there.
     String[] nodes = className.split("\\.");
-    ClassDoc cl = mClass;
-    for (String n : nodes) {
-      cl = cl.findClass(n);
-      if (cl == null) {
-        return null;
+    synchronized (Converter.LOCK) {
+      ClassDoc cl = mClass;
+      for (String n : nodes) {
+        cl = cl.findClass(n);
+        if (cl == null) {
+          return null;
+        }
       }
+      return Converter.obtainClass(cl);
     }
-    return Converter.obtainClass(cl);
   }
 
   public FieldInfo findField(String name) {
-    // first look on our class, and our superclasses
-    for (FieldInfo f : fields()) {
-      if (f.name().equals(name)) {
-        return f;
-      }
-    }
-
-    // then look at our enum constants (these are really fields, maybe
-    // they should be mixed into fields(). not sure)
-    for (FieldInfo f : enumConstants()) {
-      if (f.name().equals(name)) {
-        return f;
-      }
+    // first look on our class, and our superclasses, and then at our enum constants
+    FieldInfo f = fieldsByName().get(name);
+    if (f != null) {
+      return f;
     }
 
     // then recursively look at our containing class
@@ -1309,6 +1351,29 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
     return null;
   }
 
+  /**
+   * Returns the fields that {@link #findField} looks through, by name. Enum constants are
+   * really fields too (maybe they should be mixed into fields(), not sure), but a field of the
+   * same name comes first.
+   */
+  private HashMap<String, FieldInfo> fieldsByName() {
+    if (mFieldsByName == null) {
+      HashMap<String, FieldInfo> byName = new HashMap<String, FieldInfo>();
+      for (FieldInfo f : fields()) {
+        if (!byName.containsKey(f.name())) {
+          byName.put(f.name(), f);
+        }
+      }
+      for (FieldInfo f : enumConstants()) {
+        if (!byName.containsKey(f.name())) {
+          byName.put(f.name(), f);
+        }
+      }
+      mFieldsByName = byName;
+    }
+    return mFieldsByName;
+  }
+
   public static ClassInfo[] sortByName(ClassInfo[] classes) {
     int i;
     Sorter[] sorted = new Sorter[classes.length];
@@ -1396,26 +1461,14 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
   }
 
   private ClassDoc mClass;
+  private HashMap<String, FieldInfo> mFieldsByName;
+  private HashMap<String, MethodInfo[]> mMethodsByName;
 
   // ctor
-  private boolean mIsPublic;
-  private boolean mIsProtected;
-  private boolean mIsPackagePrivate;
-  private boolean mIsPrivate;
-  private boolean mIsStatic;
-  private boolean mIsInterface;
-  private boolean mIsAbstract;
-  private boolean mIsOrdinaryClass;
-  private boolean mIsException;
-  private boolean mIsError;
-  private boolean mIsEnum;
-  private boolean mIsAnnotation;
-  private boolean mIsFinal;
-  private boolean mIsIncluded;
+  private int mFlags;
   private String mName;
   private String mQualifiedName;
   private String mQualifiedTypeName;
-  private boolean mIsPrimitive;
   private TypeInfo mTypeInfo;
   private String[] mNameParts;
 
@@ -1454,12 +1507,37 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
   private MethodInfo[] mNonWrittenConstructors;
   private boolean mIsDeprecated;
   
-  // TODO: Temporary members from apicheck migration.
-  private HashMap<String, MethodInfo> mApiCheckMethods = new HashMap<String, MethodInfo>();
-  private HashMap<String, FieldInfo> mApiCheckFields = new HashMap<String, FieldInfo>();
-  private HashMap<String, ConstructorInfo> mApiCheckConstructors
-      = new HashMap<String, ConstructorInfo>();
-  
+  // TODO: Temporary members from apicheck migration. Only apicheck and a few stub methods
+  // fill these in, so they're made when the first member is added.
+  private HashMap<String, MethodInfo> mApiCheckMethods;
+  private HashMap<String, FieldInfo> mApiCheckFields;
+  private HashMap<String, ConstructorInfo> mApiCheckConstructors;
+
+  // The modifiers and kind of class, as bits of mFlags.
+  private static final int PUBLIC = 1 << 0;
+  private static final int PROTECTED = 1 << 1;
+  private static final int PACKAGE_PRIVATE = 1 << 2;
+  private static final int PRIVATE = 1 << 3;
+  private static final int STATIC = 1 << 4;
+  private static final int INTERFACE = 1 << 5;
+  private static final int ABSTRACT = 1 << 6;
+  private static final int ORDINARY_CLASS = 1 << 7;
+  private static final int EXCEPTION = 1 << 8;
+  private static final int ERROR = 1 << 9;
+  private static final int ENUM = 1 << 10;
+  private static final int ANNOTATION = 1 << 11;
+  private static final int FINAL = 1 << 12;
+  private static final int INCLUDED = 1 << 13;
+  private static final int PRIMITIVE = 1 << 14;
+
+  private static int flag(boolean set, int flag) {
+    return set ? flag : 0;
+  }
+
+  private boolean hasFlag(int flag) {
+    return (mFlags & flag) != 0;
+  }
+
   /**
    * Returns true if {@code cl} implements the interface {@code iface} either by either being that
    * interface, implementing that interface or extending a type that implements the interface.
@@ -1485,13 +1563,17 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
   }
 
   public void addConstructor(ConstructorInfo cInfo) {
+    if (mApiCheckConstructors == null) {
+      mApiCheckConstructors = new HashMap<String, ConstructorInfo>();
+    }
     mApiCheckConstructors.put(cInfo.getHashableName(), cInfo);
-
   }
 
   public void addField(FieldInfo fInfo) {
+    if (mApiCheckFields == null) {
+      mApiCheckFields = new HashMap<String, FieldInfo>();
+    }
     mApiCheckFields.put(fInfo.name(), fInfo);
-
   }
 
   public void setSuperClass(ClassInfo superclass) {
@@ -1499,10 +1581,16 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
   }
 
   public Map<String, ConstructorInfo> allConstructorsMap() {
+    if (mApiCheckConstructors == null) {
+      return Collections.emptyMap();
+    }
     return mApiCheckConstructors;
   }
 
   public Map<String, FieldInfo> allFields() {
+    if (mApiCheckFields == null) {
+      return Collections.emptyMap();
+    }
     return mApiCheckFields;
   }
 
@@ -1512,6 +1600,9 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
    * {@link #methods()}.
    */
   public Map<String, MethodInfo> allMethods() {
+    if (mApiCheckMethods == null) {
+      return Collections.emptyMap();
+    }
     return mApiCheckMethods;
   }
 
@@ -1562,9 +1653,9 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
       }
     }
 
-    for (MethodInfo mInfo : mApiCheckMethods.values()) {
-      if (cl.mApiCheckMethods.containsKey(mInfo.getHashableName())) {
-        if (!mInfo.isConsistent(cl.mApiCheckMethods.get(mInfo.getHashableName()))) {
+    for (MethodInfo mInfo : allMethods().values()) {
+      if (cl.allMethods().containsKey(mInfo.getHashableName())) {
+        if (!mInfo.isConsistent(cl.allMethods().get(mInfo.getHashableName()))) {
           consistent = false;
         }
       } else {
@@ -1583,8 +1674,8 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
         }
       }
     }
-    for (MethodInfo mInfo : cl.mApiCheckMethods.values()) {
-      if (!mApiCheckMethods.containsKey(mInfo.getHashableName())) {
+    for (MethodInfo mInfo : cl.allMethods().values()) {
+      if (!allMethods().containsKey(mInfo.getHashableName())) {
         /*
          * Similarly to the above, do not fail if this "new" method is really an override of an
          * existing superclass method.
@@ -1598,9 +1689,9 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
       }
     }
 
-    for (ConstructorInfo mInfo : mApiCheckConstructors.values()) {
-      if (cl.mApiCheckConstructors.containsKey(mInfo.getHashableName())) {
-        if (!mInfo.isConsistent(cl.mApiCheckConstructors.get(mInfo.getHashableName()))) {
+    for (ConstructorInfo mInfo : allConstructorsMap().values()) {
+      if (cl.allConstructorsMap().containsKey(mInfo.getHashableName())) {
+        if (!mInfo.isConsistent(cl.allConstructorsMap().get(mInfo.getHashableName()))) {
           consistent = false;
         }
       } else {
@@ -1609,17 +1700,17 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
         consistent = false;
       }
     }
-    for (ConstructorInfo mInfo : cl.mApiCheckConstructors.values()) {
-      if (!mApiCheckConstructors.containsKey(mInfo.getHashableName())) {
+    for (ConstructorInfo mInfo : cl.allConstructorsMap().values()) {
+      if (!allConstructorsMap().containsKey(mInfo.getHashableName())) {
         Errors.error(Errors.ADDED_METHOD, mInfo.position(), "Added public constructor "
             + mInfo.prettySignature());
         consistent = false;
       }
     }
 
-    for (FieldInfo mInfo : mApiCheckFields.values()) {
-      if (cl.mApiCheckFields.containsKey(mInfo.name())) {
-        if (!mInfo.isConsistent(cl.mApiCheckFields.get(mInfo.name()))) {
+    for (FieldInfo mInfo : allFields().values()) {
+      if (cl.allFields().containsKey(mInfo.name())) {
+        if (!mInfo.isConsistent(cl.allFields().get(mInfo.name()))) {
           consistent = false;
         }
       } else {
@@ -1628,27 +1719,27 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
         consistent = false;
       }
     }
-    for (FieldInfo mInfo : cl.mApiCheckFields.values()) {
-      if (!mApiCheckFields.containsKey(mInfo.name())) {
+    for (FieldInfo mInfo : cl.allFields().values()) {
+      if (!allFields().containsKey(mInfo.name())) {
         Errors.error(Errors.ADDED_FIELD, mInfo.position(), "Added public field "
             + mInfo.qualifiedName());
         consistent = false;
       }
     }
 
-    if (mIsAbstract != cl.mIsAbstract) {
+    if (hasFlag(ABSTRACT) != cl.hasFlag(ABSTRACT)) {
       consistent = false;
       Errors.error(Errors.CHANGED_ABSTRACT, cl.position(), "Class " + cl.qualifiedName()
           + " changed abstract qualifier");
     }
 
-    if (mIsFinal != cl.mIsFinal) {
+    if (hasFlag(FINAL) != cl.hasFlag(FINAL)) {
       consistent = false;
       Errors.error(Errors.CHANGED_FINAL, cl.position(), "Class " + cl.qualifiedName()
           + " changed final qualifier");
     }
 
-    if (mIsStatic != cl.mIsStatic) {
+    if (hasFlag(STATIC) != cl.hasFlag(STATIC)) {
       consistent = false;
       Errors.error(Errors.CHANGED_STATIC, cl.position(), "Class " + cl.qualifiedName()
           + " changed static qualifier");
@@ -1686,7 +1777,7 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
     if (newClassObj == null) {
       return null;
     }
-    for (MethodInfo mi : newClassObj.mApiCheckMethods.values()) {
+    for (MethodInfo mi : newClassObj.allMethods().values()) {
       if (mi.matches(candidate)) {
         // found it
         return mi;
@@ -1703,7 +1794,7 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
       return null;
     }
     for (ClassInfo interfaceInfo : newClassObj.getInterfaces()) {
-      for (MethodInfo mi : interfaceInfo.mApiCheckMethods.values()) {
+      for (MethodInfo mi : interfaceInfo.allMethods().values()) {
         if (mi.matches(candidate)) {
           return mi;
         }
@@ -1714,7 +1805,7 @@ public class ClassInfo extends DocInfo implements ContainerInfo, Comparable, Sco
   
   public boolean hasConstructor(MethodInfo constructor) {
     String name = constructor.getHashableName();
-    for (ConstructorInfo ctor : mApiCheckConstructors.values()) {
+    for (ConstructorInfo ctor : allConstructorsMap().values()) {
       if (name.equals(ctor.getHashableName())) {
         return true;
       }
@@ -17,15 +17,24 @@
 package com.google.doclava;
 
 import com.google.clearsilver.jsilver.JSilver;
+import com.google.clearsilver.jsilver.TemplateRenderer;
 import com.google.clearsilver.jsilver.data.Data;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.OutputStreamWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ClearPage {
   /*
@@ -43,6 +52,22 @@ public class ClearPage {
   public static List<String> htmlDirs = new ArrayList<String>();
   public static String toroot = null;
 
+  /** The record of the previous build when building incrementally, otherwise null. */
+  public static BuildManifest manifest = null;
+
+  /**
+   * If true, a page is rendered to a temporary file first and only replaces the existing file
+   * when its content differs, so unchanged pages keep their modification times.
+   */
+  public static boolean writeIfChanged = false;
+
+  /** Where pages and copied files are written. */
+  public static OutputSink sink = new FileOutputSink();
+
+  private static final AtomicInteger sWritten = new AtomicInteger();
+  private static final AtomicInteger sUnchanged = new AtomicInteger();
+  private static final AtomicLong sBytes = new AtomicLong();
+
   public static String getPathToRoot(String path) {
     String toroot;
     if (ClearPage.toroot != null) {
@@ -90,7 +115,7 @@ public class ClearPage {
     return slashcount;
   }
 
-  public static void write(Data data, String templ, String filename, JSilver cs) {
+  public static void write(Data data, String templ, String filename, TemplateRenderer cs) {
     write(data, templ, filename, false, cs);
   }
 
@@ -102,7 +127,8 @@ public class ClearPage {
     write(data, templ, filename, false, Doclava.jSilver);
   }
 
-  public static void write(Data data, String templ, String filename, boolean fullPath, JSilver cs) {
+  public static void write(Data data, String templ, String filename, boolean fullPath,
+      TemplateRenderer cs) {
     if (!htmlDirs.isEmpty()) {
       data.setValue("hasindex", "true");
     }
@@ -133,25 +159,247 @@ public class ClearPage {
     }
 
     File file = new File(outputFilename(filename));
+    if (manifest != null && manifest.isUpToDate(file, manifest.fingerprint(templ, data))) {
+      return;
+    }
 
-    ensureDirectory(file);
-
-    OutputStreamWriter stream = null;
+    File target = writeIfChanged ? new File(file.getPath() + ".tmp") : file;
+    MessageDigest digest = writeIfChanged ? BuildManifest.newDigest() : null;
+    boolean rendered = false;
+    PageWriter stream = PAGE_WRITER.get();
     try {
-      stream = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
-      String rendered = cs.render(templ, data);
-      stream.write(rendered, 0, rendered.length());
+      OutputStream out = new CountingOutputStream(sink.open(target));
+      if (digest != null) {
+        out = new DigestOutputStream(out, digest);
+      }
+      stream.open(new OutputStreamWriter(out, "UTF-8"));
+      cs.render(templ, data, stream);
+      rendered = true;
     } catch (IOException e) {
       System.out.println("error: " + e.getMessage() + "; when writing file: " + filename);
     } finally {
-      if (stream != null) {
+      try {
+        stream.close();
+      } catch (IOException e) {}
+    }
+
+    if (target == file) {
+      sWritten.incrementAndGet();
+    } else if (rendered) {
+      replaceIfChanged(target, file, digest.digest());
+    } else {
+      target.delete();
+    }
+  }
+
+  /**
+   * Moves a freshly rendered page over {@code file}, unless {@code file} already has the same
+   * content, in which case the new copy is dropped and {@code file} is left untouched.
+   */
+  private static void replaceIfChanged(File rendered, File file, byte[] renderedDigest) {
+    if (file.isFile() && file.length() == rendered.length()
+        && Arrays.equals(renderedDigest, digestOf(file))) {
+      rendered.delete();
+      sUnchanged.incrementAndGet();
+      return;
+    }
+    if (!rendered.renameTo(file)) {
+      // some platforms won't rename over an existing file
+      file.delete();
+      if (!rendered.renameTo(file)) {
+        System.out.println("error: could not replace file: " + file);
+        rendered.delete();
+        return;
+      }
+    }
+    sWritten.incrementAndGet();
+  }
+
+  private static byte[] digestOf(File file) {
+    MessageDigest digest = BuildManifest.newDigest();
+    InputStream in = null;
+    try {
+      in = new FileInputStream(file);
+      byte[] buffer = new byte[8 * 1024];
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+        digest.update(buffer, 0, n);
+      }
+      return digest.digest();
+    } catch (IOException e) {
+      return null;
+    } finally {
+      if (in != null) {
         try {
-          stream.close();
+          in.close();
         } catch (IOException e) {}
       }
     }
   }
 
+  /** Returns the number of pages written to disk so far. */
+  public static int writtenCount() {
+    return sWritten.get();
+  }
+
+  /** Returns the number of pages that were rendered but left alone because nothing changed. */
+  public static int unchangedCount() {
+    return sUnchanged.get();
+  }
+
+  /** Returns the number of bytes of rendered pages written so far. */
+  public static long bytesWrittenCount() {
+    return sBytes.get();
+  }
+
+  /** Adds the bytes written through it to {@link #bytesWrittenCount()} when closed. */
+  private static final class CountingOutputStream extends FilterOutputStream {
+    private long mCount;
+
+    CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      mCount++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      mCount += len;
+    }
+
+    @Override
+    public void close() throws IOException {
+      sBytes.addAndGet(mCount);
+      mCount = 0;
+      super.close();
+    }
+  }
+
+  private static final ThreadLocal<PageWriter> PAGE_WRITER = new ThreadLocal<PageWriter>() {
+    @Override
+    protected PageWriter initialValue() {
+      return new PageWriter(64 * 1024);
+    }
+  };
+
+  /**
+   * A buffered writer that is reused for every page rendered on a thread. Templates are rendered
+   * straight into it, so a page never exists in memory as a whole: at most one buffer's worth
+   * of it is held before being passed on to the file.
+   */
+  static final class PageWriter extends Writer {
+    private final char[] mBuffer;
+    private int mCount;
+    private Writer mOut;
+
+    PageWriter(int size) {
+      mBuffer = new char[size];
+    }
+
+    void open(Writer out) {
+      mOut = out;
+      mCount = 0;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+      if (mCount == mBuffer.length) {
+        flushBuffer();
+      }
+      mBuffer[mCount++] = (char) c;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+      if (len >= mBuffer.length) {
+        flushBuffer();
+        mOut.write(cbuf, off, len);
+        return;
+      }
+      if (len > mBuffer.length - mCount) {
+        flushBuffer();
+      }
+      System.arraycopy(cbuf, off, mBuffer, mCount, len);
+      mCount += len;
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+      while (len > 0) {
+        if (mCount == mBuffer.length) {
+          flushBuffer();
+        }
+        int n = Math.min(len, mBuffer.length - mCount);
+        str.getChars(off, off + n, mBuffer, mCount);
+        mCount += n;
+        off += n;
+        len -= n;
+      }
+    }
+
+    @Override
+    public Writer append(CharSequence csq) throws IOException {
+      if (csq == null) {
+        csq = "null";
+      }
+      return append(csq, 0, csq.length());
+    }
+
+    @Override
+    public Writer append(CharSequence csq, int start, int end) throws IOException {
+      if (csq == null) {
+        csq = "null";
+      }
+      if (csq instanceof String) {
+        write((String) csq, start, end - start);
+      } else {
+        for (int i = start; i < end; i++) {
+          write(csq.charAt(i));
+        }
+      }
+      return this;
+    }
+
+    private void flushBuffer() throws IOException {
+      if (mCount > 0) {
+        mOut.write(mBuffer, 0, mCount);
+        mCount = 0;
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      flushBuffer();
+      mOut.flush();
+    }
+
+    /**
+     * Flushes what is left and closes the underlying writer. The buffer stays with this
+     * object, ready for the next page.
+     */
+    @Override
+    public void close() throws IOException {
+      Writer out = mOut;
+      if (out == null) {
+        return;
+      }
+      mOut = null;
+      try {
+        if (mCount > 0) {
+          out.write(mBuffer, 0, mCount);
+        }
+      } finally {
+        mCount = 0;
+        out.close();
+      }
+    }
+  }
+
   // recursively create the directories to the output
   public static void ensureDirectory(File f) {
     File parent = f.getParentFile();
@@ -161,52 +409,42 @@ public class ClearPage {
   }
 
   public static void copyFile(File from, File to) {
-    FileInputStream in;
-    FileOutputStream out;
-    try {
-      if (!from.exists()) {
-        throw new IOException();
-      }
-      in = new FileInputStream(from);
-    } catch (IOException e) {
+    if (manifest != null) {
+      manifest.record(to);
+    }
+    if (!from.exists()) {
       System.err.println(from.getAbsolutePath() + ": Error opening file");
       return;
     }
-    ensureDirectory(to);
     try {
-      out = new FileOutputStream(to);
+      sink.copy(from, to);
     } catch (IOException e) {
-      System.err.println(from.getAbsolutePath() + ": Error opening file");
-      return;
+      System.err.println(from.getAbsolutePath() + ": error copying file: " + e.getMessage());
     }
+  }
 
-    long sizel = from.length();
-    final int maxsize = 64 * 1024;
-    int size = sizel > maxsize ? maxsize : (int) sizel;
-    byte[] buf = new byte[size];
-    while (true) {
-      try {
-        size = in.read(buf);
-      } catch (IOException e) {
-        System.err.println(from.getAbsolutePath() + ": error reading file");
-        break;
+  /**
+   * Copies the content of {@code from} to {@code out}, closing both.
+   */
+  public static void copyToStream(File from, OutputStream out) throws IOException {
+    InputStream in = null;
+    try {
+      in = new FileInputStream(from);
+      long sizel = from.length();
+      final int maxsize = 64 * 1024;
+      byte[] buf = new byte[sizel > maxsize ? maxsize : Math.max(1, (int) sizel)];
+      int size;
+      while ((size = in.read(buf)) > 0) {
+        out.write(buf, 0, size);
       }
-      if (size > 0) {
+    } finally {
+      if (in != null) {
         try {
-          out.write(buf, 0, size);
-        } catch (IOException e) {
-          System.err.println(from.getAbsolutePath() + ": error writing file");
-        }
-      } else {
-        break;
+          in.close();
+        } catch (IOException e) {}
       }
-    }
-    try {
-      in.close();
-    } catch (IOException e) {}
-    try {
       out.close();
-    } catch (IOException e) {}
+    }
   }
 
   /** Takes a string that ends w/ .html and changes the .html to htmlExtension */
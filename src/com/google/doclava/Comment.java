@@ -19,17 +19,9 @@ package com.google.doclava;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import java.util.ArrayList;
+import java.util.List;
 
 public class Comment {
-  static final Pattern LEADING_WHITESPACE = Pattern.compile("^[ \t\n\r]*(.*)$", Pattern.DOTALL);
-
-  static final Pattern TAG_BEGIN = Pattern.compile("[\r\n][\r\n \t]*@", Pattern.DOTALL);
-
-  static final Pattern TAG = Pattern.compile("(@[^ \t\r\n]+)[ \t\r\n]+(.*)", Pattern.DOTALL);
-
-  static final Pattern INLINE_TAG =
-      Pattern.compile("(.*?)\\{(@[^ \t\r\n\\}]+)[ \t\r\n]*(.*?)\\}", Pattern.DOTALL);
-
   static final Pattern FIRST_SENTENCE =
       Pattern.compile("((.*?)\\.)[ \t\r\n\\<](.*)", Pattern.DOTALL);
 
@@ -49,6 +41,36 @@ public class Comment {
           "@serial",
       };
 
+  /**
+   * Tag names that are common enough to be worth sharing, so that the parser hands out these
+   * strings instead of making new ones for every tag.
+   */
+  private static final String[] COMMON_TAGS = new String[] {
+          "@param",
+          "@return",
+          "@throws",
+          "@see",
+          "@link",
+          "@code",
+          "@deprecated",
+          "@since",
+          "@hide",
+          "@exception",
+          "@linkplain",
+          "@literal",
+          "@attr",
+          "@more",
+          "@inheritDoc",
+          "@docRoot",
+          "@pending",
+          "@doconly",
+          "@undeprecate",
+          "@include",
+          "@sample",
+          "@author",
+          "@version",
+      };
+
   public Comment(String text, ContainerInfo base, SourcePositionInfo sp) {
     mText = text;
     mBase = base;
@@ -56,56 +78,150 @@ public class Comment {
     mPosition = SourcePositionInfo.findBeginning(sp, text);
   }
 
-  private void parseRegex(String text) {
-    Matcher m;
-
-    m = LEADING_WHITESPACE.matcher(text);
-    m.matches();
-    text = m.group(1);
-
-    m = TAG_BEGIN.matcher(text);
+  /**
+   * Splits the comment into its blocks, each of which is either a block tag such as
+   * {@code @param} or, for the first one, the main description. A block starts with an '@' that
+   * is the first thing on its line.
+   *
+   * <p>The main description is parsed on its own by {@link #parseDescription}, because that is
+   * all the brief tags usually need, and the block tags after it by {@link #parseBlockTags} once
+   * something asks for them.
+   *
+   * <p>These and {@link #block} walk the text once, and only make strings for what ends up in the
+   * tags. The tags are the same as those the regular expressions that used to do this found:
+   * <pre>
+   * leading whitespace  ^[ \t\n\r]*(.*)$
+   * block start         [\r\n][\r\n \t]*@
+   * block tag           (@[^ \t\r\n]+)[ \t\r\n]+(.*)
+   * inline tag          (.*?)\{(@[^ \t\r\n\}]+)[ \t\r\n]*(.*?)\}
+   * </pre>
+   */
+  private void parseDescription() {
+    String text = mText;
+    mFirst = skipSpace(text, 0);
+    int end = blockEnd(text, mFirst);
+    block(text, mFirst, end, SourcePositionInfo.add(mPosition, text, 0));
+    mBlockTagsStart = end < text.length() ? skipSpace(text, end) : -1;
+    mDescriptionParsed = true;
+  }
 
-    int start = 0;
-    int end = 0;
-    while (m.find()) {
-      end = m.start();
+  private void parseBlockTags() {
+    String text = mText;
+    int start = mBlockTagsStart;
+    int[] lineBreaks = start >= 0 ? SourcePositionInfo.lineBreaks(text) : null;
+    while (start >= 0) {
+      int end = blockEnd(text, start);
+      block(text, start, end, SourcePositionInfo.add(mPosition, lineBreaks, start - mFirst));
+      start = end < text.length() ? skipSpace(text, end) : -1;
+    }
+    mBlockTagsStart = -1;
+  }
 
-      tag(text, start, end);
+  /**
+   * Returns where the block starting at {@code start} ends, which is the line break before the
+   * next block's '@', or the end of the text.
+   */
+  private static int blockEnd(String text, int start) {
+    final int len = text.length();
+    int i = start;
+    while (i < len) {
+      char c = text.charAt(i);
+      if (c == '\n' || c == '\r') {
+        int j = skipSpace(text, i + 1);
+        if (j < len && text.charAt(j) == '@') {
+          return i;
+        }
+        i = j + 1;
+      } else {
+        i++;
+      }
+    }
+    return len;
+  }
 
-      start = m.end() - 1; // -1 is the @
+  private static int skipSpace(String text, int i) {
+    final int len = text.length();
+    while (i < len && isSpace(text.charAt(i))) {
+      i++;
     }
-    end = text.length();
-    tag(text, start, end);
+    return i;
   }
 
-  private void tag(String text, int start, int end) {
-    SourcePositionInfo pos = SourcePositionInfo.add(mPosition, mText, start);
+  /**
+   * Adds the tags for the block from {@code start} to {@code end}, at {@code pos}. The position
+   * of a block is worked out from its offset without the whitespace at the start of the comment.
+   */
+  private void block(String text, int start, int end, SourcePositionInfo pos) {
+    if (start >= end) {
+      return;
+    }
 
-    if (start >= 0 && end > 0 && (end - start) > 0) {
-      text = text.substring(start, end);
+    if (text.charAt(start) == '@') {
+      int nameEnd = start + 1;
+      while (nameEnd < end && !isSpace(text.charAt(nameEnd))) {
+        nameEnd++;
+      }
+      if (nameEnd > start + 1 && nameEnd < end) {
+        int valueStart = nameEnd + 1;
+        while (valueStart < end && isSpace(text.charAt(valueStart))) {
+          valueStart++;
+        }
+        tag(tagName(text, start, nameEnd), text.substring(valueStart, end), false, pos);
+        return;
+      }
+    }
 
-      Matcher m = TAG.matcher(text);
-      if (m.matches()) {
-        // out of line tag
-        tag(m.group(1), m.group(2), false, pos);
-      } else {
-        // look for inline tags
-        m = INLINE_TAG.matcher(text);
-        start = 0;
-        while (m.find()) {
-          String str = m.group(1);
-          String tagname = m.group(2);
-          String tagvalue = m.group(3);
-          tag(null, m.group(1), true, pos);
-          tag(tagname, tagvalue, true, pos);
-          start = m.end();
+    // look for inline tags: '{', '@', the name, optional whitespace, the value, and '}'
+    int lastClose = text.lastIndexOf('}', end - 1);
+    int textStart = start;
+    int open = text.indexOf('{', start);
+    while (open >= 0 && open + 2 < lastClose) {
+      int nameStart = open + 1;
+      if (text.charAt(nameStart) == '@' && !isNameEnd(text.charAt(nameStart + 1))) {
+        int nameEnd = nameStart + 2;
+        while (nameEnd < end && !isNameEnd(text.charAt(nameEnd))) {
+          nameEnd++;
+        }
+        int valueStart = nameEnd;
+        while (valueStart < end && isSpace(text.charAt(valueStart))) {
+          valueStart++;
         }
-        int len = text.length();
-        if (start != len) {
-          tag(null, text.substring(start), true, pos);
+        int close = valueStart <= lastClose ? text.indexOf('}', valueStart) : -1;
+        if (close >= 0) {
+          tag(null, text.substring(textStart, open), true, pos);
+          tag(tagName(text, nameStart, nameEnd), text.substring(valueStart, close), true, pos);
+          textStart = close + 1;
+          open = text.indexOf('{', textStart);
+          continue;
         }
       }
+      open = text.indexOf('{', open + 1);
+    }
+    if (textStart != end) {
+      tag(null, text.substring(textStart, end), true, pos);
+    }
+  }
+
+  private static boolean isSpace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+  }
+
+  private static boolean isNameEnd(char c) {
+    return c == '}' || isSpace(c);
+  }
+
+  /**
+   * Returns the tag name from {@code start} to {@code end}, sharing the string if it's a common
+   * one.
+   */
+  private static String tagName(String text, int start, int end) {
+    int length = end - start;
+    for (String name : COMMON_TAGS) {
+      if (name.length() == length && text.startsWith(name, start)) {
+        return name;
+      }
     }
+    return text.substring(start, end);
   }
 
   private void tag(String name, String text, boolean isInline, SourcePositionInfo pos) {
@@ -174,9 +290,19 @@ public class Comment {
     }
   }
 
-  private void parseBriefTags() {
+  /**
+   * Picks the brief tags out of the inline tags found so far. Unless {@code complete} says that
+   * there are no more to come, this gives up and returns false if the brief might go on past
+   * them, which it does when there's no end of the first sentence yet or an {@code @more} tag
+   * could still turn up.
+   */
+  private boolean parseBriefTags(boolean complete) {
     int N = mInlineTagsList.size();
 
+    if (!complete && mBlockTagsStart >= 0 && mText.indexOf("{@more", mBlockTagsStart) >= 0) {
+      return false;
+    }
+
     // look for "@more" tag, which means that we might go past the first sentence.
     int more = -1;
     for (int i = 0; i < N; i++) {
@@ -188,22 +314,29 @@ public class Comment {
       for (int i = 0; i < more; i++) {
         mBriefTagsList.add(mInlineTagsList.get(i));
       }
-    } else {
-      for (int i = 0; i < N; i++) {
-        TagInfo t = mInlineTagsList.get(i);
-        if (t.name().equals("Text")) {
-          Matcher m = FIRST_SENTENCE.matcher(t.text());
-          if (m.matches()) {
-            String text = m.group(1);
-            TagInfo firstSentenceTag = new TagInfo(t.name(), t.kind(), text, t.position());
-            mBriefTagsList.add(firstSentenceTag);
-            break;
+      return true;
+    }
+
+    for (int i = 0; i < N; i++) {
+      TagInfo t = mInlineTagsList.get(i);
+      if (t.name().equals("Text")) {
+        Matcher m = FIRST_SENTENCE.matcher(t.text());
+        if (m.matches()) {
+          for (int j = 0; j < i; j++) {
+            mBriefTagsList.add(mInlineTagsList.get(j));
           }
+          String text = m.group(1);
+          TagInfo firstSentenceTag = new TagInfo(t.name(), t.kind(), text, t.position());
+          mBriefTagsList.add(firstSentenceTag);
+          return true;
         }
-        mBriefTagsList.add(t);
-
       }
     }
+    if (!complete) {
+      return false;
+    }
+    mBriefTagsList.addAll(mInlineTagsList);
+    return true;
   }
 
   public TagInfo[] tags() {
@@ -214,9 +347,7 @@ public class Comment {
   public TagInfo[] tags(String name) {
     init();
     ArrayList<TagInfo> results = new ArrayList<TagInfo>();
-    int N = mInlineTagsList.size();
-    for (int i = 0; i < N; i++) {
-      TagInfo t = mInlineTagsList.get(i);
+    for (TagInfo t : mInlineTags) {
       if (t.name().equals(name)) {
         results.add(t);
       }
@@ -245,11 +376,17 @@ public class Comment {
   }
 
   public TagInfo[] deprecatedTags() {
+    if (!mInitialized && !isDeprecated()) {
+      return NO_TAGS;
+    }
     init();
     return mDeprecatedTags;
   }
 
   public TagInfo[] undeprecateTags() {
+    if (!mInitialized && mText.indexOf("@undeprecate") < 0) {
+      return NO_TAGS;
+    }
     init();
     return mUndeprecateTags;
   }
@@ -260,7 +397,7 @@ public class Comment {
   }
 
   public TagInfo[] briefTags() {
-    init();
+    initBrief();
     return mBriefTags;
   }
 
@@ -304,15 +441,45 @@ public class Comment {
     }
   }
 
+  /**
+   * Works out the brief tags from the main description alone if it can, so that comments which
+   * are only ever shown in summary form never have their block tags parsed.
+   */
+  private void initBrief() {
+    if (mBriefTags != null) {
+      return;
+    }
+    if (!mInitialized && Doclava.parseComments()) {
+      if (!mDescriptionParsed) {
+        if (share()) {
+          return;
+        }
+        parse(false);
+      }
+      if (parseBriefTags(mBlockTagsStart < 0)) {
+        mBriefTags = mBriefTagsList.toArray(NO_TAGS);
+        mBriefTagsList = null;
+        return;
+      }
+    }
+    init();
+  }
+
   private void initImpl() {
     isHidden();
     isDocOnly();
     isDeprecated();
 
+    String text = mText;
     // Don't bother parsing text if we aren't generating documentation.
     if (Doclava.parseComments()) {
-      parseRegex(mText);
-      parseBriefTags();
+      if (!mDescriptionParsed && share()) {
+        return;
+      }
+      parse(true);
+      if (mBriefTags == null) {
+        parseBriefTags(true);
+      }
     } else {
       // Forces methods to be recognized by findOverriddenMethods in MethodInfo.
       mInlineTagsList.add(new TextTagInfo("Text", "Text", mText,
@@ -322,19 +489,112 @@ public class Comment {
     mText = null;
     mInitialized = true;
 
-    mInlineTags = mInlineTagsList.toArray(new TagInfo[mInlineTagsList.size()]);
-    mParamTags = mParamTagsList.toArray(new ParamTagInfo[mParamTagsList.size()]);
-    mSeeTags = mSeeTagsList.toArray(new SeeTagInfo[mSeeTagsList.size()]);
-    mThrowsTags = mThrowsTagsList.toArray(new ThrowsTagInfo[mThrowsTagsList.size()]);
-    mReturnTags =
-        ParsedTagInfo.joinTags(mReturnTagsList.toArray(new ParsedTagInfo[mReturnTagsList.size()]));
-    mDeprecatedTags =
-        ParsedTagInfo.joinTags(mDeprecatedTagsList.toArray(new ParsedTagInfo[mDeprecatedTagsList
-            .size()]));
-    mUndeprecateTags = mUndeprecateTagsList.toArray(new TagInfo[mUndeprecateTagsList.size()]);
-    mAttrTags = mAttrTagsList.toArray(new AttrTagInfo[mAttrTagsList.size()]);
-    mBriefTags = mBriefTagsList.toArray(new TagInfo[mBriefTagsList.size()]);
+    // Most comments have none of most kinds of tag, and they all share one empty array for
+    // each kind: toArray only makes a new array when the list doesn't fit in the one given.
+    mInlineTags = mInlineTagsList.toArray(NO_TAGS);
+    mParamTags = mParamTagsList.toArray(NO_PARAM_TAGS);
+    mSeeTags = mSeeTagsList.toArray(NO_SEE_TAGS);
+    mThrowsTags = mThrowsTagsList.toArray(NO_THROWS_TAGS);
+    mReturnTags = joinTags(mReturnTagsList);
+    mDeprecatedTags = joinTags(mDeprecatedTagsList);
+    mUndeprecateTags = mUndeprecateTagsList.toArray(NO_TAGS);
+    mAttrTags = mAttrTagsList.toArray(NO_ATTR_TAGS);
+    if (mBriefTags == null) {
+      mBriefTags = mBriefTagsList.toArray(NO_TAGS);
+    }
+    dropLists();
+
+    if (mRecorded != null) {
+      CommentCache.put(text, mBase, this, mRecorded);
+      mRecorded = null;
+    }
+  }
+
+  /**
+   * Parses the main description, and the block tags after it if {@code blockTags} is set. If
+   * this comment is going to be shared, the errors reported along the way are recorded, and
+   * the comments inside its {@code @return} and {@code @deprecated} tags are parsed now so that
+   * their errors are recorded too.
+   */
+  private void parse(boolean blockTags) {
+    List<Errors.Reported> errors = null;
+    List<Errors.Reported> previous = null;
+    if (mRecorded != null) {
+      errors = new ArrayList<Errors.Reported>();
+      previous = Errors.startRecording(errors);
+    }
+    try {
+      if (!mDescriptionParsed) {
+        parseDescription();
+      }
+      if (blockTags) {
+        parseBlockTags();
+        if (errors != null) {
+          parseTagComments(mReturnTagsList);
+          parseTagComments(mDeprecatedTagsList);
+        }
+      }
+    } finally {
+      if (errors != null) {
+        Errors.stopRecording(errors, previous);
+        mRecorded.addAll(errors);
+      }
+    }
+  }
+
+  private static TagInfo[] joinTags(List<ParsedTagInfo> tags) {
+    if (tags.isEmpty()) {
+      return NO_TAGS;
+    }
+    return ParsedTagInfo.joinTags(tags.toArray(new ParsedTagInfo[tags.size()]));
+  }
+
+  private static void parseTagComments(List<? extends ParsedTagInfo> tags) {
+    for (ParsedTagInfo tag : tags) {
+      tag.commentTags();
+    }
+  }
+
+  /**
+   * Takes the tags of a comment with the same text and base that was parsed before, if there is
+   * one, and reports its errors again at this comment's position. Returns false if this comment
+   * has to be parsed itself, in which case it will be kept for the next one if it can be shared.
+   */
+  private boolean share() {
+    if (!CommentCache.isShareable(mText)) {
+      return false;
+    }
+    CommentCache.Entry entry = CommentCache.get(mText, mBase);
+    if (entry == null) {
+      mRecorded = new ArrayList<Errors.Reported>();
+      return false;
+    }
+
+    isHidden();
+    isDocOnly();
+    isDeprecated();
+    mText = null;
+    mInitialized = true;
+
+    Comment c = entry.comment;
+    mInlineTags = c.mInlineTags;
+    mParamTags = c.mParamTags;
+    mSeeTags = c.mSeeTags;
+    mThrowsTags = c.mThrowsTags;
+    mReturnTags = c.mReturnTags;
+    mDeprecatedTags = c.mDeprecatedTags;
+    mUndeprecateTags = c.mUndeprecateTags;
+    mAttrTags = c.mAttrTags;
+    mBriefTags = c.mBriefTags;
+    dropLists();
+
+    entry.reportErrors(mPosition);
+    return true;
+  }
 
+  private void dropLists() {
+    mInlineTagsList = null;
+    mTagsList = null;
     mParamTagsList = null;
     mSeeTagsList = null;
     mThrowsTagsList = null;
@@ -345,7 +605,17 @@ public class Comment {
     mBriefTagsList = null;
   }
 
+  private static final TagInfo[] NO_TAGS = new TagInfo[0];
+  private static final ParamTagInfo[] NO_PARAM_TAGS = new ParamTagInfo[0];
+  private static final SeeTagInfo[] NO_SEE_TAGS = new SeeTagInfo[0];
+  private static final ThrowsTagInfo[] NO_THROWS_TAGS = new ThrowsTagInfo[0];
+  private static final AttrTagInfo[] NO_ATTR_TAGS = new AttrTagInfo[0];
+
   boolean mInitialized;
+  boolean mDescriptionParsed;
+  int mFirst;
+  int mBlockTagsStart = -1;
+  List<Errors.Reported> mRecorded;
   int mHidden = -1;
   int mDocOnly = -1;
   int mDeprecated = -1;
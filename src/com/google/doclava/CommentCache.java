@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parsed comments, kept by their text and base so that comments with the same text in the same
+ * context share one set of tags instead of each parsing its own. Overloads, generated code and
+ * boilerplate such as "Returns the value." repeat the same text many times.
+ *
+ * <p>Tags hold the position they were found at, and the ones that are used to report errors
+ * after parsing would report them at the first copy only: links, {@code @inheritDoc}, and the
+ * {@code @param} and {@code @throws} tags that {@link MethodInfo} checks against the method.
+ * Comments with those in them are not shared; see {@link #isShareable}. The errors reported while
+ * a shared comment is parsed are kept, and reported again at the right line for every other
+ * copy.
+ */
+class CommentCache {
+  private static final ConcurrentMap<Key, Entry> sEntries = new ConcurrentHashMap<Key, Entry>();
+  private static final AtomicLong sLookups = new AtomicLong();
+  private static final AtomicLong sHits = new AtomicLong();
+  private static final AtomicLong sUnshareable = new AtomicLong();
+
+  /**
+   * Returns whether comments with this text can share their tags, which they can unless the
+   * text has a tag that reports errors at its own position after parsing.
+   */
+  static boolean isShareable(String text) {
+    if (text.indexOf("@see") >= 0 || text.indexOf("@link") >= 0
+        || text.indexOf("@inheritDoc") >= 0 || text.indexOf("@param") >= 0
+        || text.indexOf("@throws") >= 0 || text.indexOf("@exception") >= 0) {
+      sUnshareable.incrementAndGet();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns the comment already parsed with this text and base, or null if there isn't one.
+   */
+  static Entry get(String text, ContainerInfo base) {
+    sLookups.incrementAndGet();
+    Entry entry = sEntries.get(new Key(text, base));
+    if (entry != null) {
+      sHits.incrementAndGet();
+    }
+    return entry;
+  }
+
+  /**
+   * Keeps a comment that has been parsed in full, along with the errors its parse reported.
+   */
+  static void put(String text, ContainerInfo base, Comment comment, List<Errors.Reported> errors) {
+    sEntries.putIfAbsent(new Key(text, base), new Entry(comment, errors));
+  }
+
+  static long lookupCount() {
+    return sLookups.get();
+  }
+
+  static long hitCount() {
+    return sHits.get();
+  }
+
+  /** Returns how many comments weren't looked up because they can't be shared. */
+  static long unshareableCount() {
+    return sUnshareable.get();
+  }
+
+  static void clear() {
+    sEntries.clear();
+    sLookups.set(0);
+    sHits.set(0);
+    sUnshareable.set(0);
+  }
+
+  /** A parsed comment and the errors reported while it was parsed. */
+  static final class Entry {
+    final Comment comment;
+    private final List<Errors.Reported> mErrors;
+
+    Entry(Comment comment, List<Errors.Reported> errors) {
+      this.comment = comment;
+      mErrors = errors.isEmpty() ? null : errors;
+    }
+
+    /**
+     * Reports the errors from the first parse again for a copy of the comment at
+     * {@code position}. Errors in the comment's own file move by as many lines as the copy is
+     * from the first one.
+     */
+    void reportErrors(SourcePositionInfo position) {
+      if (mErrors == null) {
+        return;
+      }
+      SourcePositionInfo first = comment.mPosition;
+      for (Errors.Reported e : mErrors) {
+        SourcePositionInfo where = e.where;
+        if (where != null && first != null && position != null && where.file != null
+            && where.file.equals(first.file)) {
+          where = new SourcePositionInfo(position.file, where.line - first.line + position.line,
+              where.column);
+        }
+        Errors.error(e.error, where, e.text);
+      }
+    }
+  }
+
+  private static final class Key {
+    private final String mText;
+    private final ContainerInfo mBase;
+
+    Key(String text, ContainerInfo base) {
+      mText = text;
+      mBase = base;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key that = (Key) o;
+      return mBase == that.mBase && mText.equals(that.mText);
+    }
+
+    @Override
+    public int hashCode() {
+      return mText.hashCode() * 31 + System.identityHashCode(mBase);
+    }
+  }
+}
@@ -18,13 +18,37 @@ package com.google.doclava;
 
 import com.sun.javadoc.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class Converter {
   private static RootDoc root;
 
+  /**
+   * Held by anything that reads javadoc's model or creates objects from it. javadoc's objects
+   * aren't thread safe, so while comments are parsed on more than one thread (see
+   * {@link #parseComments}) the lookups they do into javadoc, and into other classes, take this
+   * lock.
+   */
+  static final Object LOCK = new Object();
+
   public static void makeInfo(RootDoc r) {
+    makeInfo(r, 1);
+  }
+
+  /**
+   * Converts the javadoc model. Creating the objects and filling them in reads javadoc and
+   * happens on this thread; with more than one thread, the comments {@link ClassInfo#init2}
+   * parses are parsed on a pool of that many workers first.
+   */
+  public static void makeInfo(RootDoc r, int threads) {
     root = r;
 
     int N, i;
@@ -46,6 +70,9 @@ public class Converter {
       classesNeedingInit2.add(clni.cl);
     }
     mClassesNeedingInit = null;
+    if (threads > 1) {
+      parseComments(classesNeedingInit2, threads);
+    }
     for (ClassInfo cl : classesNeedingInit2) {
       cl.init2();
     }
@@ -54,18 +81,290 @@ public class Converter {
 
     // fill in the "root" stuff
     mRootClasses = Converter.convertClasses(r.classes());
+    Tag[] rootTags = r.inlineTags();
+    mRootTags = new TagInfo[rootTags.length];
+    for (i = 0; i < rootTags.length; i++) {
+      Tag t = rootTags[i];
+      SourcePositionInfo pos = Converter.convertSourcePosition(t.position());
+      if (t instanceof SeeTag) {
+        mRootTags[i] = new SeeTagInfo(t.name(), t.kind(), t.text(), null, pos);
+      } else {
+        mRootTags[i] = new TagInfo(t.name(), t.kind(), t.text(), pos);
+      }
+    }
+
+    SymbolIndex.build(r, allClasses());
+
+    // the converted names share their strings already; what's converted later starts afresh
+    synchronized (LOCK) {
+      sNames = new HashMap<String, String>();
+    }
+  }
+
+  /**
+   * Takes the model from classes read back from a {@link ModelSnapshot} instead of converting
+   * javadoc's. The classes are filled in apart from what {@link ClassInfo#init2} works out from
+   * their comments, which is done here as {@link #makeInfo} does it.
+   */
+  static void useInfo(ClassInfo[] classes, ClassInfo[] rootClasses, TagInfo[] rootTags,
+      int threads) {
+    root = null;
+    mClassesNeedingInit = null;
+    mLoadedClasses = classes;
+    mRootClasses = rootClasses;
+    mRootTags = rootTags;
+
+    List<ClassInfo> classesNeedingInit2 = Arrays.asList(classes);
+    if (threads > 1) {
+      parseComments(classesNeedingInit2, threads);
+    }
+    for (ClassInfo cl : classesNeedingInit2) {
+      cl.init2();
+    }
+  }
+
+  /**
+   * Parses the class, method and constructor comments of each class on its own task, so that
+   * init2 finds them parsed. What the tasks need that's worked out lazily, such as the methods
+   * of each class and whether each comment is hidden, is worked out here first.
+   */
+  private static void parseComments(List<ClassInfo> classes, int threads) {
+    List<Comment[]> work = new ArrayList<Comment[]>(classes.size());
+    for (ClassInfo cl : classes) {
+      List<Comment> comments = new ArrayList<Comment>();
+      comments.add(cl.comment());
+      for (MethodInfo m : cl.selfMethods()) {
+        comments.add(m.comment());
+      }
+      for (MethodInfo m : cl.constructors()) {
+        comments.add(m.comment());
+      }
+      for (Comment c : comments) {
+        c.isHidden();
+        c.isDocOnly();
+        c.isDeprecated();
+      }
+      work.add(comments.toArray(new Comment[comments.size()]));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> tasks = new ArrayList<Future<?>>(work.size());
+      for (final Comment[] comments : work) {
+        tasks.add(executor.submit(new Runnable() {
+          public void run() {
+            for (Comment c : comments) {
+              c.attrTags();
+            }
+          }
+        }));
+      }
+      for (Future<?> task : tasks) {
+        try {
+          task.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new RuntimeException("Interrupted while parsing comments", e);
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw new RuntimeException(cause);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Lets go of javadoc's model once the model is converted, for {@code -releasejavadoc}, so that
+   * the two aren't both kept while the site is rendered. What rendering would still ask javadoc
+   * is asked first: each package's class lists, and the names that links and {@code @throws}
+   * tags look up. Those are found by resolving every link in every comment ahead of rendering,
+   * with the base rendering gives it, and through the classes that resolving loads as well.
+   * Resolving ahead keeps nothing but the answers and reports nothing; rendering resolves the
+   * links again, from the answers, and reports their errors as usual. A name that nothing asked
+   * about resolves to nothing afterwards, as it does when rendering from a
+   * {@link ModelSnapshot}.
+   */
+  static void releaseJavadoc() {
+    for (TagInfo t : mRootTags) {
+      if (t instanceof SeeTagInfo) {
+        ((SeeTagInfo) t).resolveAhead();
+      }
+    }
+
+    HashSet<ClassInfo> classes = new HashSet<ClassInfo>();
+    HashSet<PackageInfo> packages = new HashSet<PackageInfo>();
+    boolean loaded = true;
+    while (loaded) {
+      loaded = false;
+      for (ClassInfo cl : (ClassInfo[]) mClasses.all()) {
+        if (!classes.add(cl)) {
+          continue;
+        }
+        loaded = true;
+        PackageInfo pkg = cl.containingPackage();
+        if (pkg != null && packages.add(pkg)) {
+          pkg.releaseJavadoc();
+          resolveAhead(pkg, pkg.parent());
+        }
+        resolveAhead(cl);
+      }
+    }
+
+    for (ClassInfo cl : classes) {
+      cl.releaseJavadoc();
+    }
+    mLoadedClasses = (ClassInfo[]) mClasses.all();
+    SymbolIndex.release(mLoadedClasses);
+    root = null;
+    mClasses.clear();
+    mMethods.clear();
+    mFields.clear();
+    mPackages.clear();
+    mTypes.clear();
+    mAnnotationInstances.clear();
+    mAnnotationValues.clear();
+  }
+
+  private static void resolveAhead(ClassInfo cl) {
+    resolveAhead(cl, cl.parent());
+    List<MethodInfo> methods = new ArrayList<MethodInfo>();
+    if (cl.allSelfMethods() != null) {
+      methods.addAll(Arrays.asList(cl.allSelfMethods()));
+    }
+    // the ones from hidden parents are copies whose comments have this class as their base
+    methods.addAll(Arrays.asList(cl.selfMethods()));
+    for (MethodInfo m : methods) {
+      resolveAhead(m, m.parent());
+      // MethodInfo.paramTags takes undocumented parameters' comments from the methods it
+      // overrides, and gives them this method's base
+      for (MethodInfo o = m.findOverriddenMethod(m.name(), m.signature()); o != null;
+          o = o.findOverriddenMethod(o.name(), o.signature())) {
+        if (mayLookUp(o.getRawCommentText())) {
+          boolean wasMuted = Errors.mute(true);
+          try {
+            for (ParamTagInfo p : parseAgain(o, o.parent()).paramTags()) {
+              resolveAhead(new Comment(p.parameterComment(), m.parent(), p.position()));
+            }
+          } finally {
+            Errors.mute(wasMuted);
+          }
+        }
+      }
+    }
+    for (MethodInfo m : cl.allConstructors()) {
+      resolveAhead(m, m.parent());
+    }
+    for (MethodInfo m : cl.annotationElements()) {
+      resolveAhead(m, m.parent());
+    }
+    for (FieldInfo f : cl.allSelfFields()) {
+      resolveAhead(f, f.parent());
+    }
+    for (FieldInfo f : cl.selfFields()) {
+      resolveAhead(f, f.parent());
+    }
+    for (FieldInfo f : cl.enumConstants()) {
+      resolveAhead(f, f.parent());
+    }
+  }
+
+  /**
+   * Resolves the links in the comment of {@code doc}, parsed again with {@code base} so that
+   * nothing is kept on the comment itself and the errors its parse reports are reported when
+   * rendering parses it.
+   */
+  private static void resolveAhead(DocInfo doc, ContainerInfo base) {
+    if (!mayLookUp(doc.getRawCommentText())) {
+      return;
+    }
+    boolean wasMuted = Errors.mute(true);
+    try {
+      resolveAhead(parseAgain(doc, base));
+    } finally {
+      Errors.mute(wasMuted);
+    }
+  }
+
+  private static Comment parseAgain(DocInfo doc, ContainerInfo base) {
+    return new Comment(doc.getRawCommentText(), base, doc.position());
+  }
+
+  private static void resolveAhead(Comment c) {
+    resolveAhead(c.tags());
+    resolveAhead(c.seeTags());
+    resolveAhead(c.returnTags());
+    resolveAhead(c.deprecatedTags());
+    for (ParamTagInfo p : c.paramTags()) {
+      resolveAhead(p.commentTags());
+    }
+    for (ThrowsTagInfo t : c.throwsTags()) {
+      resolveAhead(t.commentTags());
+    }
+  }
+
+  private static void resolveAhead(TagInfo[] tags) {
+    for (TagInfo t : tags) {
+      if (t instanceof SeeTagInfo) {
+        ((SeeTagInfo) t).resolveAhead();
+      }
+    }
+  }
+
+  /**
+   * Returns whether a comment with this text has tags that look names up: links, and the
+   * exceptions of {@code @throws} and the fields of {@code @attr} tags.
+   */
+  private static boolean mayLookUp(String text) {
+    return text != null && (text.indexOf("@link") >= 0 || text.indexOf("@see") >= 0
+        || text.indexOf("@throws") >= 0 || text.indexOf("@exception") >= 0
+        || text.indexOf("@attr") >= 0);
   }
 
   private static ClassInfo[] mRootClasses;
+  private static ClassInfo[] mLoadedClasses;
+  // the overview comment's tags as javadoc has them: SeeTagInfo for links, plain TagInfo for the
+  // rest, with their text not yet escaped
+  private static TagInfo[] mRootTags;
 
   public static ClassInfo[] rootClasses() {
     return mRootClasses;
   }
 
   public static ClassInfo[] allClasses() {
+    if (mLoadedClasses != null) {
+      return mLoadedClasses.clone();
+    }
     return (ClassInfo[]) mClasses.all();
   }
 
+  /**
+   * Returns the tags of the overview comment. They're converted again on each call, as
+   * converting escapes their text for the template set and rendering them changes their kinds.
+   */
+  public static TagInfo[] rootTags() {
+    TagInfo[] out = new TagInfo[mRootTags.length];
+    for (int i = 0; i < out.length; i++) {
+      TagInfo t = mRootTags[i];
+      if (t instanceof SeeTagInfo) {
+        out[i] = new SeeTagInfo(t.name(), t.kind(), t.text(), null, t.position());
+      } else {
+        out[i] = new TextTagInfo(t.name(), t.kind(), t.text(), t.position());
+      }
+    }
+    return out;
+  }
+
+  static TagInfo[] unconvertedRootTags() {
+    return mRootTags;
+  }
+
   private static void initClass(ClassDoc c, ClassInfo cl) {
     MethodDoc[] annotationElements;
     if (c instanceof AnnotationTypeDoc) {
@@ -73,26 +372,39 @@ public class Converter {
     } else {
       annotationElements = new MethodDoc[0];
     }
+    // javadoc filters and copies its member arrays on every call, so ask for each one once
+    ConstructorDoc[] constructors = c.constructors(false);
+    MethodDoc[] methods = c.methods(false);
     cl.init(Converter.obtainType(c), Converter.convertClasses(c.interfaces()), Converter
         .convertTypes(c.interfaceTypes()), Converter.convertClasses(c.innerClasses()), Converter
-        .convertMethods(c.constructors(false)), Converter.convertMethods(c.methods(false)),
+        .convertMethods(constructors), Converter.convertMethods(methods),
         Converter.convertMethods(annotationElements), Converter.convertFields(c.fields(false)),
         Converter.convertFields(c.enumConstants()), Converter.obtainPackage(c.containingPackage()),
         Converter.obtainClass(c.containingClass()), Converter.obtainClass(c.superclass()),
         Converter.obtainType(c.superclassType()), Converter.convertAnnotationInstances(c
             .annotations()));
-    cl.setHiddenMethods(Converter.getHiddenMethods(c.methods(false)));
-    cl.setNonWrittenConstructors(Converter.convertNonWrittenConstructors(c.constructors(false)));
+    cl.setHiddenMethods(Converter.getHiddenMethods(methods));
+    cl.setNonWrittenConstructors(Converter.convertNonWrittenConstructors(constructors));
     cl.init3(Converter.convertTypes(c.typeParameters()), Converter.convertClasses(c
         .innerClasses(false)));
   }
 
   public static ClassInfo obtainClass(String className) {
-    return Converter.obtainClass(root.classNamed(className));
+    if (SymbolIndex.isBuilt()) {
+      return SymbolIndex.findClass(className);
+    }
+    synchronized (LOCK) {
+      return Converter.obtainClass(root.classNamed(className));
+    }
   }
 
   public static PackageInfo obtainPackage(String packageName) {
-    return Converter.obtainPackage(root.packageNamed(packageName));
+    if (SymbolIndex.isBuilt()) {
+      return SymbolIndex.findPackage(packageName);
+    }
+    synchronized (LOCK) {
+      return Converter.obtainPackage(root.packageNamed(packageName));
+    }
   }
 
   private static TagInfo convertTag(Tag tag) {
@@ -150,6 +462,9 @@ public class Converter {
       return null;
     }
     int N = classes.length;
+    if (N == 0) {
+      return NO_CLASSES;
+    }
     ClassInfo[] result = new ClassInfo[N];
     for (int i = 0; i < N; i++) {
       result[i] = Converter.obtainClass(classes[i]);
@@ -160,7 +475,8 @@ public class Converter {
   private static ParameterInfo convertParameter(Parameter p, SourcePosition pos, boolean isVarArg) {
     if (p == null) return null;
     ParameterInfo pi =
-        new ParameterInfo(p.name(), p.typeName(), Converter.obtainType(p.type()), isVarArg,
+        new ParameterInfo(intern(p.name()), intern(p.typeName()), Converter.obtainType(p.type()),
+          isVarArg,
           Converter.convertSourcePosition(pos));
     return pi;
   }
@@ -168,6 +484,9 @@ public class Converter {
   private static ParameterInfo[] convertParameters(Parameter[] p, ExecutableMemberDoc m) {
     SourcePosition pos = m.position();
     int len = p.length;
+    if (len == 0) {
+      return NO_PARAMETERS;
+    }
     ParameterInfo[] q = new ParameterInfo[len];
     for (int i = 0; i < len; i++) {
       boolean isVarArg = (m.isVarArgs() && i == len - 1);
@@ -179,6 +498,9 @@ public class Converter {
   private static TypeInfo[] convertTypes(Type[] p) {
     if (p == null) return null;
     int len = p.length;
+    if (len == 0) {
+      return NO_TYPES;
+    }
     TypeInfo[] q = new TypeInfo[len];
     for (int i = 0; i < len; i++) {
       q[i] = Converter.obtainType(p[i]);
@@ -188,6 +510,37 @@ public class Converter {
 
   private Converter() {}
 
+  // Most members have no annotations, parameters or exceptions, and most classes have no inner
+  // classes, so the empty arrays are shared rather than made for each one. None of these is
+  // ever written to; ClassInfo and MethodInfo make new arrays when they add to them.
+  private static final ClassInfo[] NO_CLASSES = new ClassInfo[0];
+  private static final MethodInfo[] NO_METHODS = new MethodInfo[0];
+  private static final FieldInfo[] NO_FIELDS = new FieldInfo[0];
+  private static final ParameterInfo[] NO_PARAMETERS = new ParameterInfo[0];
+  private static final TypeInfo[] NO_TYPES = new TypeInfo[0];
+  private static final AnnotationInstanceInfo[] NO_ANNOTATIONS = new AnnotationInstanceInfo[0];
+
+  /**
+   * The names and signatures of everything converted so far. javadoc makes a new string each
+   * time it's asked for one, so without this every method named {@code toString}, every
+   * {@code ()} signature and every {@code int} parameter would keep a copy of its own. Only
+   * used with {@link #LOCK} held, and emptied when {@link #makeInfo} is done.
+   */
+  private static HashMap<String, String> sNames = new HashMap<String, String>();
+
+  private static String intern(String s) {
+    assert Thread.holdsLock(LOCK);
+    if (s == null) {
+      return null;
+    }
+    String name = sNames.get(s);
+    if (name == null) {
+      sNames.put(s, s);
+      name = s;
+    }
+    return name;
+  }
+
   private static class ClassNeedingInit {
     ClassNeedingInit(ClassDoc c, ClassInfo cl) {
       this.c = c;
@@ -216,8 +569,9 @@ public class Converter {
           new ClassInfo(input, input.getRawCommentText(), Converter.convertSourcePosition(input.position()), input
               .isPublic(), input.isProtected(), input.isPackagePrivate(), input.isPrivate(), input.isStatic(), input
               .isInterface(), input.isAbstract(), input.isOrdinaryClass(), input.isException(), input.isError(), input
-              .isEnum(), (input instanceof AnnotationTypeDoc), input.isFinal(), input.isIncluded(), input.name(), input
-              .qualifiedName(), input.qualifiedTypeName(), input.isPrimitive());
+              .isEnum(), (input instanceof AnnotationTypeDoc), input.isFinal(), input.isIncluded(),
+              intern(input.name()), intern(input.qualifiedName()),
+              intern(input.qualifiedTypeName()), input.isPrimitive());
       if (mClassesNeedingInit != null) {
         mClassesNeedingInit.add(new ClassNeedingInit(input, cl));
       }
@@ -227,8 +581,14 @@ public class Converter {
     @Override
     protected void made(ClassDoc input, ClassInfo output) {
       if (mClassesNeedingInit == null) {
-        initClass(input, output);
-        output.init2();
+        // whatever it's needed for, a class reports what's wrong with it as it's converted
+        boolean wasMuted = Errors.mute(false);
+        try {
+          initClass(input, output);
+          output.init2();
+        } finally {
+          Errors.mute(wasMuted);
+        }
       }
     }
 
@@ -256,7 +616,7 @@ public class Converter {
         out.add(m);
       }
     }
-    return out.toArray(new MethodInfo[out.size()]);
+    return out.toArray(NO_METHODS);
   }
 
   /**
@@ -281,7 +641,7 @@ public class Converter {
         out.add(m);
       }
     }
-    return out.toArray(new MethodInfo[out.size()]);
+    return out.toArray(NO_METHODS);
   }
 
   private static MethodInfo[] convertMethods(ConstructorDoc[] methods) {
@@ -294,7 +654,7 @@ public class Converter {
         out.add(m);
       }
     }
-    return out.toArray(new MethodInfo[out.size()]);
+    return out.toArray(NO_METHODS);
   }
 
   private static MethodInfo[] convertNonWrittenConstructors(ConstructorDoc[] methods) {
@@ -307,7 +667,7 @@ public class Converter {
         out.add(m);
       }
     }
-    return out.toArray(new MethodInfo[out.size()]);
+    return out.toArray(NO_METHODS);
   }
 
   private static MethodInfo obtainMethod(MethodDoc o) {
@@ -325,12 +685,13 @@ public class Converter {
       if (o instanceof AnnotationTypeElementDoc) {
         AnnotationTypeElementDoc m = (AnnotationTypeElementDoc) o;
         MethodInfo result =
-            new MethodInfo(m.getRawCommentText(), Converter.convertTypes(m.typeParameters()), m
-                .name(), m.signature(), Converter.obtainClass(m.containingClass()), Converter
-                .obtainClass(m.containingClass()), m.isPublic(), m.isProtected(), m
+            new MethodInfo(m.getRawCommentText(), Converter.convertTypes(m.typeParameters()),
+                intern(m.name()), intern(m.signature()),
+                Converter.obtainClass(m.containingClass()),
+                Converter.obtainClass(m.containingClass()), m.isPublic(), m.isProtected(), m
                 .isPackagePrivate(), m.isPrivate(), m.isFinal(), m.isStatic(), m.isSynthetic(), m
-                .isAbstract(), m.isSynchronized(), m.isNative(), true, "annotationElement", m
-                .flatSignature(), Converter.obtainMethod(m.overriddenMethod()), Converter
+                .isAbstract(), m.isSynchronized(), m.isNative(), true, "annotationElement",
+                intern(m.flatSignature()), Converter.obtainMethod(m.overriddenMethod()), Converter
                 .obtainType(m.returnType()), Converter.convertParameters(m.parameters(), m),
                 Converter.convertClasses(m.thrownExceptions()), Converter.convertSourcePosition(m
                     .position()), Converter.convertAnnotationInstances(m.annotations()));
@@ -340,12 +701,13 @@ public class Converter {
       } else if (o instanceof MethodDoc) {
         MethodDoc m = (MethodDoc) o;
         MethodInfo result =
-            new MethodInfo(m.getRawCommentText(), Converter.convertTypes(m.typeParameters()), m
-                .name(), m.signature(), Converter.obtainClass(m.containingClass()), Converter
-                .obtainClass(m.containingClass()), m.isPublic(), m.isProtected(), m
+            new MethodInfo(m.getRawCommentText(), Converter.convertTypes(m.typeParameters()),
+                intern(m.name()), intern(m.signature()),
+                Converter.obtainClass(m.containingClass()),
+                Converter.obtainClass(m.containingClass()), m.isPublic(), m.isProtected(), m
                 .isPackagePrivate(), m.isPrivate(), m.isFinal(), m.isStatic(), m.isSynthetic(), m
                 .isAbstract(), m.isSynchronized(), m.isNative(), false, "method",
-                m.flatSignature(), Converter.obtainMethod(m.overriddenMethod()), Converter
+                intern(m.flatSignature()), Converter.obtainMethod(m.overriddenMethod()), Converter
                     .obtainType(m.returnType()), Converter.convertParameters(m.parameters(), m),
                 Converter.convertClasses(m.thrownExceptions()), Converter.convertSourcePosition(m
                     .position()), Converter.convertAnnotationInstances(m.annotations()));
@@ -355,11 +717,13 @@ public class Converter {
       } else {
         ConstructorDoc m = (ConstructorDoc) o;
         MethodInfo result =
-            new MethodInfo(m.getRawCommentText(), Converter.convertTypes(m.typeParameters()), m
-                .name(), m.signature(), Converter.obtainClass(m.containingClass()), Converter
-                .obtainClass(m.containingClass()), m.isPublic(), m.isProtected(), m
+            new MethodInfo(m.getRawCommentText(), Converter.convertTypes(m.typeParameters()),
+                intern(m.name()), intern(m.signature()),
+                Converter.obtainClass(m.containingClass()),
+                Converter.obtainClass(m.containingClass()), m.isPublic(), m.isProtected(), m
                 .isPackagePrivate(), m.isPrivate(), m.isFinal(), m.isStatic(), m.isSynthetic(),
-                false, m.isSynchronized(), m.isNative(), false, "constructor", m.flatSignature(),
+                false, m.isSynchronized(), m.isNative(), false, "constructor",
+                intern(m.flatSignature()),
                 null, null, Converter.convertParameters(m.parameters(), m), Converter
                     .convertClasses(m.thrownExceptions()), Converter.convertSourcePosition(m
                     .position()), Converter.convertAnnotationInstances(m.annotations()));
@@ -381,7 +745,7 @@ public class Converter {
         out.add(f);
       }
     }
-    return out.toArray(new FieldInfo[out.size()]);
+    return out.toArray(NO_FIELDS);
   }
 
   private static FieldInfo obtainField(FieldDoc o) {
@@ -391,7 +755,7 @@ public class Converter {
   private static Cache<FieldDoc, FieldInfo> mFields = new Cache<FieldDoc, FieldInfo>() {
     @Override
     protected FieldInfo make(FieldDoc f) {
-      return new FieldInfo(f.name(), Converter.obtainClass(f.containingClass()), Converter
+      return new FieldInfo(intern(f.name()), Converter.obtainClass(f.containingClass()), Converter
           .obtainClass(f.containingClass()), f.isPublic(), f.isProtected(), f.isPackagePrivate(), f
           .isPrivate(), f.isFinal(), f.isStatic(), f.isTransient(), f.isVolatile(),
           f.isSynthetic(), Converter.obtainType(f.type()), f.getRawCommentText(),
@@ -400,7 +764,7 @@ public class Converter {
     }
   };
 
-  private static PackageInfo obtainPackage(PackageDoc o) {
+  static PackageInfo obtainPackage(PackageDoc o) {
     return mPackages.obtain(o);
   }
 
@@ -425,8 +789,8 @@ public class Converter {
         simpleTypeName = t.simpleTypeName();
       }
       TypeInfo ti =
-          new TypeInfo(t.isPrimitive(), t.dimension(), simpleTypeName, t.qualifiedTypeName(),
-              Converter.obtainClass(t.asClassDoc()));
+          new TypeInfo(t.isPrimitive(), t.dimension(), intern(simpleTypeName),
+              intern(t.qualifiedTypeName()), Converter.obtainClass(t.asClassDoc()));
       return ti;
     }
 
@@ -503,6 +867,9 @@ public class Converter {
 
   private static AnnotationInstanceInfo[] convertAnnotationInstances(AnnotationDesc[] orig) {
     int len = orig.length;
+    if (len == 0) {
+      return NO_ANNOTATIONS;
+    }
     AnnotationInstanceInfo[] out = new AnnotationInstanceInfo[len];
     for (int i = 0; i < len; i++) {
       out[i] = Converter.obtainAnnotationInstance(orig[i]);
@@ -536,6 +903,11 @@ public class Converter {
   };
 
 
+  /**
+   * Makes each object once for its key. Objects are made under {@link #LOCK}, and what's made
+   * while making one object, including the object itself, stays pending until the outermost
+   * one is done, so that other threads never see an object that isn't filled in yet.
+   */
   private abstract static class Cache<K, V> {
     V obtain(K input) {
       if (input == null) {
@@ -543,17 +915,50 @@ public class Converter {
       }
       Object key = keyFor(input);
       V value = mCache.get(key);
-      if (value == null) {
-        value = make(input);
+      if (value != null) {
+        return value;
+      }
+      synchronized (LOCK) {
+        value = mCache.get(key);
+        if (value == null) {
+          value = mPending.get(key);
+        }
         if (value != null) {
-          mCache.put(key, value);
-          made(input, value);
+          return value;
+        }
+        sMaking++;
+        try {
+          value = make(input);
+          if (value != null) {
+            if (mPending.isEmpty()) {
+              sCachesPending.add(this);
+            }
+            mPending.put(key, value);
+            made(input, value);
+          }
+        } finally {
+          if (--sMaking == 0) {
+            for (Cache<?, ?> cache : sCachesPending) {
+              cache.publish();
+            }
+            sCachesPending.clear();
+          }
         }
       }
       return value;
     }
 
-    protected final HashMap<Object, V> mCache = new HashMap<Object, V>();
+    private void publish() {
+      mCache.putAll(mPending);
+      mPending.clear();
+    }
+
+    void clear() {
+      mCache.clear();
+    }
+
+    protected final ConcurrentHashMap<Object, V> mCache = new ConcurrentHashMap<Object, V>();
+    private final HashMap<Object, V> mPending = new HashMap<Object, V>();
 
     protected abstract V make(K input);
 
@@ -568,6 +973,10 @@ public class Converter {
     }
   }
 
+  // guarded by LOCK
+  private static int sMaking;
+  private static final List<Cache<?, ?>> sCachesPending = new ArrayList<Cache<?, ?>>();
+
   // annotation values
   private static HashMap<AnnotationValue, AnnotationValueInfo> mAnnotationValues =
       new HashMap<AnnotationValue, AnnotationValueInfo>();
@@ -578,16 +987,18 @@ public class Converter {
     if (o == null) {
       return null;
     }
-    AnnotationValueInfo v = mAnnotationValues.get(o);
-    if (v != null) return v;
-    v = new AnnotationValueInfo(element);
-    mAnnotationValues.put(o, v);
-    if (mAnnotationValuesNeedingInit != null) {
-      mAnnotationValuesNeedingInit.add(o);
-    } else {
-      initAnnotationValue(o, v);
+    synchronized (LOCK) {
+      AnnotationValueInfo v = mAnnotationValues.get(o);
+      if (v != null) return v;
+      v = new AnnotationValueInfo(element);
+      mAnnotationValues.put(o, v);
+      if (mAnnotationValuesNeedingInit != null) {
+        mAnnotationValuesNeedingInit.add(o);
+      } else {
+        initAnnotationValue(o, v);
+      }
+      return v;
     }
-    return v;
   }
 
   private static void initAnnotationValue(AnnotationValue o, AnnotationValueInfo v) {
@@ -616,14 +1027,16 @@ public class Converter {
   }
 
   private static void finishAnnotationValueInit() {
-    while (mAnnotationValuesNeedingInit.size() > 0) {
-      HashSet<AnnotationValue> set = mAnnotationValuesNeedingInit;
-      mAnnotationValuesNeedingInit = new HashSet<AnnotationValue>();
-      for (AnnotationValue o : set) {
-        AnnotationValueInfo v = mAnnotationValues.get(o);
-        initAnnotationValue(o, v);
+    synchronized (LOCK) {
+      while (mAnnotationValuesNeedingInit.size() > 0) {
+        HashSet<AnnotationValue> set = mAnnotationValuesNeedingInit;
+        mAnnotationValuesNeedingInit = new HashSet<AnnotationValue>();
+        for (AnnotationValue o : set) {
+          AnnotationValueInfo v = mAnnotationValues.get(o);
+          initAnnotationValue(o, v);
+        }
       }
+      mAnnotationValuesNeedingInit = null;
     }
-    mAnnotationValuesNeedingInit = null;
   }
 }
@@ -18,6 +18,7 @@ package com.google.doclava;
 
 import com.google.clearsilver.jsilver.data.Data;
 
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
@@ -90,10 +91,16 @@ public abstract class DocInfo {
   }
   
   public final void addFederatedReference(FederatedSite source) {
+    if (mFederatedReferences == null) {
+      mFederatedReferences = new LinkedHashSet<FederatedSite>();
+    }
     mFederatedReferences.add(source);
   }
   
   public final Set<FederatedSite> getFederatedReferences() {
+    if (mFederatedReferences == null) {
+      return Collections.emptySet();
+    }
     return mFederatedReferences;
   }
   
@@ -110,5 +117,5 @@ public abstract class DocInfo {
   Comment mComment;
   SourcePositionInfo mPosition;
   private String mSince;
-  private Set<FederatedSite> mFederatedReferences = new LinkedHashSet<FederatedSite>();
+  private Set<FederatedSite> mFederatedReferences; // made by the first federated reference
 }
@@ -17,22 +17,25 @@
 package com.google.doclava;
 
 import com.google.clearsilver.jsilver.JSilver;
+import com.google.clearsilver.jsilver.TemplateRenderer;
+import com.google.clearsilver.jsilver.data.ChainedData;
 import com.google.clearsilver.jsilver.data.Data;
+import com.google.clearsilver.jsilver.data.UnmodifiableData;
 import com.google.clearsilver.jsilver.resourceloader.ClassResourceLoader;
 import com.google.clearsilver.jsilver.resourceloader.CompositeResourceLoader;
 import com.google.clearsilver.jsilver.resourceloader.FileSystemResourceLoader;
 import com.google.clearsilver.jsilver.resourceloader.ResourceLoader;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarFile;
-import java.lang.reflect.Proxy;
-import com.sun.javadoc.ClassDoc;
-import com.sun.javadoc.Doc;
 import com.sun.javadoc.DocErrorReporter;
 import com.sun.javadoc.LanguageVersion;
-import com.sun.javadoc.MemberDoc;
 import com.sun.javadoc.RootDoc;
-import com.sun.javadoc.Type;
+import com.sun.javadoc.SourcePosition;
 
 import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
@@ -44,10 +47,6 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.lang.reflect.Array;
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 
@@ -86,18 +85,53 @@ public class Doclava {
   public static RootDoc root;
   public static ArrayList<String[]> mHDFData = new ArrayList<String[]>();
   public static Map<Character, String> escapeChars = new HashMap<Character, String>();
+  private static HtmlEscaper escaper = HtmlEscaper.NONE;
   public static String title = "";
   public static SinceTagger sinceTagger = new SinceTagger();
   public static HashSet<String> knownTags = new HashSet<String>();
   public static FederationTagger federationTagger = new FederationTagger();
   private static boolean generateDocs = true;
   private static boolean generateSources = false;
+  private static int threads = 1;
+  private static boolean incremental = false;
+  private static String templateCacheDir = null;
+  private static String outputZip = null;
+  private static boolean gzipPages = false;
+  private static String assetStore = null;
+  private static String metricsFile = null;
+  private static String snapshotFile = null;
+  private static String snapshotToRender = null;
   private static boolean parseComments = false;
+  private static boolean releaseJavadoc = false;
+  // set when main renders the site itself once javadoc returns; see renderAfterJavadoc
+  private static boolean renderingAfterJavadoc = false;
   public static String apiVersion = null;
   private static String yamlNavFile = null;
+  private static String keepListFile = null;
+  private static String proofreadFile = null;
+  private static String todoFile = null;
+  private static String sdkValuePath = null;
+  private static ArrayList<SampleCode> sampleCodes = new ArrayList<SampleCode>();
+  private static boolean offlineMode = false;
+  private static String apiFile = null;
+  private static File currentApiFile = null;
+  private static ModelSnapshot renderedSnapshot = null;
+  private static ModelSnapshot snapshot = null;
   
   public static JSilver jSilver = null;
 
+  /**
+   * Renders the class and source pages from compiled templates when -templatecache is set.
+   */
+  private static TemplateCache templateCache = null;
+
+  private static TemplateRenderer classPageRenderer() {
+    if (templateCache != null) {
+      return templateCache;
+    }
+    return jSilver;
+  }
+
   public static boolean checkLevel(int level) {
     return (showLevel & level) == level;
   }
@@ -131,27 +165,125 @@ public class Doclava {
     return false;
   }
 
+  /**
+   * Javadoc's own options that take a value, which rendering from a snapshot skips along with
+   * their values.
+   */
+  private static final Set<String> JAVADOC_OPTIONS_WITH_VALUES = new HashSet<String>(
+      Arrays.asList("-bootclasspath", "-classpath", "-cp", "-docletpath", "-doclet", "-encoding",
+          "-exclude", "-extdirs", "-locale", "-overview", "-source", "-sourcepath",
+          "-subpackages"));
+
   public static void main(String[] args) {
+    boolean release = false;
+    for (String arg : args) {
+      if (arg.equals("-fromsnapshot")) {
+        if (!renderSnapshot(args)) {
+          System.exit(1);
+        }
+        return;
+      }
+      release |= arg.equals("-releasejavadoc");
+    }
+    if (release) {
+      if (!renderAfterJavadoc(args)) {
+        System.exit(1);
+      }
+      return;
+    }
     com.sun.tools.javadoc.Main.execute(args);
   }
 
+  /**
+   * Runs javadoc for -releasejavadoc, and renders the site once it has returned. javadoc holds
+   * on to its model until the doclet returns, so letting go of it in the doclet saves nothing.
+   * Instead the doclet converts the model, copies out of javadoc what rendering will need (see
+   * {@link Converter#releaseJavadoc}) and returns, and the site is rendered here, when javadoc's
+   * model can be collected.
+   */
+  private static boolean renderAfterJavadoc(String[] args) {
+    renderingAfterJavadoc = true;
+    int status = com.sun.tools.javadoc.Main.execute("javadoc", Doclava.class.getName(),
+        Doclava.class.getClassLoader(), args);
+    if (status != 0) {
+      return false;
+    }
+    return writeDocs();
+  }
+
+  /**
+   * Renders the site from a model saved by an earlier run's -snapshot, without running javadoc.
+   * The doclet options are read as javadoc would read them. Javadoc's own options and the
+   * packages to document are skipped, since the snapshot already has what they chose.
+   */
+  private static boolean renderSnapshot(String[] args) {
+    List<String[]> options = new ArrayList<String[]>();
+    int i = 0;
+    while (i < args.length) {
+      int n = optionLength(args[i]);
+      if (n == 0) {
+        i += JAVADOC_OPTIONS_WITH_VALUES.contains(args[i]) ? 2 : 1;
+        continue;
+      }
+      if (i + n > args.length) {
+        System.err.println("error: " + args[i] + " takes " + (n - 1) + " value(s)");
+        return false;
+      }
+      String[] option = new String[n];
+      System.arraycopy(args, i, option, 0, n);
+      options.add(option);
+      i += n;
+    }
+    String[][] optionArray = options.toArray(new String[options.size()][]);
+    DocErrorReporter reporter = new DocErrorReporter() {
+      public void printError(String msg) {
+        System.err.println("error: " + msg);
+      }
+
+      public void printError(SourcePosition pos, String msg) {
+        printError(msg);
+      }
+
+      public void printWarning(String msg) {
+        System.err.println("warning: " + msg);
+      }
+
+      public void printWarning(SourcePosition pos, String msg) {
+        printWarning(msg);
+      }
+
+      public void printNotice(String msg) {
+        System.err.println(msg);
+      }
+
+      public void printNotice(SourcePosition pos, String msg) {
+        printNotice(msg);
+      }
+    };
+    if (!validOptions(optionArray, reporter)) {
+      return false;
+    }
+    return start(null, optionArray);
+  }
+
   public static boolean start(RootDoc r) {
-    String keepListFile = null;
-    String proofreadFile = null;
-    String todoFile = null;
-    String sdkValuePath = null;
-    ArrayList<SampleCode> sampleCodes = new ArrayList<SampleCode>();
+    return start(r, r.options());
+  }
+
+  /**
+   * Documents {@code r}, or the model read from -fromsnapshot if that's among the
+   * {@code options}, in which case {@code r} may be null. For -releasejavadoc run from
+   * {@link #main}, it stops once {@code r} is converted and released, and main writes the docs.
+   */
+  private static boolean start(RootDoc r, String[][] options) {
     String stubsDir = null;
     // Create the dependency graph for the stubs directory
-    boolean offlineMode = false;
-    String apiFile = null;
     String debugStubsFile = "";
     HashSet<String> stubPackages = null;
     ArrayList<String> knownTagsFiles = new ArrayList<String>();
 
     root = r;
 
-    String[][] options = r.options();
     for (String[] a : options) {
       if (a[0].equals("-d")) {
         ClearPage.outputDir = a[1];
@@ -242,6 +374,29 @@ public class Doclava {
         generateSources = true;
       } else if (a[0].equals("-yaml")) {
         yamlNavFile = a[1];
+      } else if (a[0].equals("-threads")) {
+        threads = Integer.parseInt(a[1]);
+      } else if (a[0].equals("-incremental")) {
+        incremental = true;
+      } else if (a[0].equals("-writeifchanged")) {
+        ClearPage.writeIfChanged = true;
+      } else if (a[0].equals("-templatecache")) {
+        templateCacheDir = a[1];
+      } else if (a[0].equals("-outputzip")) {
+        outputZip = a[1];
+      } else if (a[0].equals("-gzip")) {
+        gzipPages = true;
+      } else if (a[0].equals("-assetstore")) {
+        assetStore = a[1];
+      } else if (a[0].equals("-metrics")) {
+        metricsFile = a[1];
+        Metrics.enable();
+      } else if (a[0].equals("-snapshot")) {
+        snapshotFile = a[1];
+      } else if (a[0].equals("-fromsnapshot")) {
+        snapshotToRender = a[1];
+      } else if (a[0].equals("-releasejavadoc")) {
+        releaseJavadoc = true;
       }
       
     }
@@ -251,10 +406,25 @@ public class Doclava {
     }
 
     // Set up the data structures
-    Converter.makeInfo(r);
+    Metrics.Phase phase;
+    if (snapshotToRender != null) {
+      phase = Metrics.begin("ModelSnapshot.read");
+      try {
+        renderedSnapshot = ModelSnapshot.read(new File(snapshotToRender), threads);
+      } catch (IOException e) {
+        System.err.println("error: could not read snapshot " + snapshotToRender + ": "
+            + e.getMessage());
+        return false;
+      }
+      phase.end();
+    } else {
+      phase = Metrics.begin("Converter.makeInfo");
+      Converter.makeInfo(r, threads);
+      phase.end();
+    }
+    snapshot = snapshotFile != null ? ModelSnapshot.record() : null;
 
     // Stubs and xml
-    final File currentApiFile;
     if (!generateDocs && apiFile != null) {
       currentApiFile = new File(apiFile);
     } else if (generateDocs) {
@@ -264,120 +434,295 @@ public class Doclava {
       currentApiFile = null;
     }
 
+    phase = Metrics.begin("Stubs.writeStubsAndXml");
     Stubs.writeStubsAndXml(stubsDir, currentApiFile, stubPackages);
+    phase.end();
 
     if (generateDocs && apiFile != null) {
       ClearPage.copyFile(currentApiFile, new File(apiFile));
     }
 
+    if (releaseJavadoc && r != null) {
+      if (renderingAfterJavadoc) {
+        phase = Metrics.begin("Converter.releaseJavadoc");
+        Converter.releaseJavadoc();
+        root = null;
+        phase.end();
+        return true;
+      }
+      System.err.println("warning: -releasejavadoc only has an effect when Doclava is run with"
+          + " its own main, since javadoc keeps its model until the doclet returns");
+    }
+    return writeDocs();
+  }
+
+  /**
+   * Writes the site and the rest of the output the options ask for from the converted model,
+   * and reports the errors. Returns whether there were none.
+   */
+  private static boolean writeDocs() {
+    Metrics.Phase phase;
+
     // Reference documentation
     if (generateDocs) {
-      ClearPage.addBundledTemplateDir("assets/customizations");
-      ClearPage.addBundledTemplateDir("assets/templates");
+      if (outputZip != null) {
+        try {
+          ClearPage.sink = new ZipOutputSink(new File(outputZip), new File(ClearPage.outputDir));
+        } catch (IOException e) {
+          System.err.println("error: could not create " + outputZip + ": " + e.getMessage());
+          return false;
+        }
+      } else if (assetStore != null) {
+        ClearPage.sink = new FileOutputSink(new File(assetStore));
+      }
+      if (gzipPages) {
+        ClearPage.sink = new GzipOutputSink(ClearPage.sink);
+      }
 
-      List<ResourceLoader> resourceLoaders = new ArrayList<ResourceLoader>();
-      List<String> templates = ClearPage.getTemplateDirs();
-      for (String tmpl : templates) {
-        resourceLoaders.add(new FileSystemResourceLoader(tmpl));
+      long startTime = System.nanoTime();
+      boolean written = false;
+      try {
+        written = writeSite();
+      } finally {
+        // even after a failure, so that an archive is finished and the sink lets go of its files
+        try {
+          ClearPage.sink.close();
+        } catch (IOException e) {
+          System.err.println("error: could not finish writing docs: " + e.getMessage());
+          written = false;
+        }
+      }
+      if (!written) {
+        return false;
+      }
+      if (ClearPage.sink instanceof FileOutputSink && (assetStore != null || metricsFile != null)) {
+        FileOutputSink files = (FileOutputSink) ClearPage.sink;
+        System.out.println("Assets: " + files.copiedCount() + " copied, " + files.linkedCount()
+            + " linked, " + files.upToDateCount() + " up to date");
       }
 
-      templates = ClearPage.getBundledTemplateDirs();
-      for (String tmpl : templates) {
-        resourceLoaders.add(new ClassResourceLoader(Doclava.class, '/' + tmpl));
+      if (templateCache != null && metricsFile != null) {
+        System.out.println("Template cache: " + templateCache.compiledCount() + " compiled, "
+            + templateCache.loadedCount() + " loaded from " + templateCacheDir);
       }
 
-      ResourceLoader compositeResourceLoader = new CompositeResourceLoader(resourceLoaders);
-      jSilver = new JSilver(compositeResourceLoader);
+      if (metricsFile != null) {
+        long lookups = CommentCache.lookupCount();
+        long hits = CommentCache.hitCount();
+        System.out.println("Comment cache: " + hits + " of " + lookups
+            + " shareable comments shared (" + (lookups == 0 ? 0 : hits * 100 / lookups) + "%), "
+            + CommentCache.unshareableCount() + " not shareable");
+        System.out.println("Links: " + LinkReference.hitCount() + " already resolved, "
+            + LinkReference.missCount() + " resolved, " + LinkReference.unresolvedCount()
+            + " unresolved");
+      }
+
+      long time = System.nanoTime() - startTime;
+      System.out.println("DroidDoc took " + (time / 1000000000) + " sec. to write docs to "
+          + ClearPage.outputDir);
+    }
 
-      if (!Doclava.readTemplateSettings()) {
+    if (snapshot != null) {
+      phase = Metrics.begin("ModelSnapshot.write");
+      try {
+        snapshot.write(new File(snapshotFile));
+      } catch (IOException e) {
+        System.err.println("error: could not write snapshot " + snapshotFile + ": "
+            + e.getMessage());
         return false;
       }
+      phase.end();
+    }
 
-      long startTime = System.nanoTime();
+    Errors.printErrors();
 
-      // Use current version information
-      if (apiVersion != null && sinceTagger.hasVersions()) {
-        sinceTagger.addVersion(currentApiFile.getAbsolutePath(), apiVersion);
-      }
+    Metrics.setCounter("commentCache.lookups", CommentCache.lookupCount());
+    Metrics.setCounter("commentCache.hits", CommentCache.hitCount());
+    Metrics.setCounter("commentCache.unshareable", CommentCache.unshareableCount());
+    Metrics.setCounter("links.hits", LinkReference.hitCount());
+    Metrics.setCounter("links.misses", LinkReference.missCount());
+    Metrics.setCounter("links.unresolved", LinkReference.unresolvedCount());
+    if (templateCache != null) {
+      Metrics.setCounter("templateCache.compiled", templateCache.compiledCount());
+      Metrics.setCounter("templateCache.loaded", templateCache.loadedCount());
+    }
+    if (metricsFile != null && !Metrics.write(metricsFile)) {
+      return false;
+    }
+
+    return !Errors.hadError;
+  }
 
-      // Apply @since tags from the XML file
+  /**
+   * Writes the pages, assets and lists of the site through {@link ClearPage#sink}, which the
+   * caller closes. Returns false if it had to stop.
+   */
+  private static boolean writeSite() {
+    Metrics.Phase phase;
+
+    ClearPage.addBundledTemplateDir("assets/customizations");
+    ClearPage.addBundledTemplateDir("assets/templates");
+
+    List<ResourceLoader> resourceLoaders = new ArrayList<ResourceLoader>();
+    List<String> templates = ClearPage.getTemplateDirs();
+    for (String tmpl : templates) {
+      resourceLoaders.add(new FileSystemResourceLoader(tmpl));
+    }
+
+    templates = ClearPage.getBundledTemplateDirs();
+    for (String tmpl : templates) {
+      resourceLoaders.add(new ClassResourceLoader(Doclava.class, '/' + tmpl));
+    }
+
+    ResourceLoader compositeResourceLoader = new CompositeResourceLoader(resourceLoaders);
+    jSilver = new JSilver(compositeResourceLoader);
+    if (templateCacheDir != null) {
+      templateCache = new TemplateCache(jSilver, compositeResourceLoader,
+          new File(templateCacheDir));
+    }
+
+    if (!Doclava.readTemplateSettings()) {
+      return false;
+    }
+
+    if (incremental) {
+      List<String> pageDirs = new ArrayList<String>(ClearPage.getTemplateDirs());
+      pageDirs.addAll(ClearPage.htmlDirs);
+      ClearPage.manifest = BuildManifest.load(ClearPage.outputDir);
+      ClearPage.manifest.setInputs(mHDFData, pageDirs, ClearPage.getBundledTemplateDirs());
+    }
+
+    // Use current version information
+    if (renderedSnapshot == null && apiVersion != null && sinceTagger.hasVersions()) {
+      sinceTagger.addVersion(currentApiFile.getAbsolutePath(), apiVersion);
+    }
+
+    // Apply @since tags from the XML file, or as they were when the snapshot was saved
+    phase = Metrics.begin("SinceTagger.tagAll");
+    if (renderedSnapshot != null) {
+      renderedSnapshot.tagSince();
+    } else {
       sinceTagger.tagAll(Converter.rootClasses());
-      
-      // Apply details of federated documentation
-      federationTagger.tagAll(Converter.rootClasses());
+    }
+    phase.end();
+    
+    // Apply details of federated documentation
+    phase = Metrics.begin("federation");
+    federationTagger.tagAll(Converter.rootClasses());
+    phase.end();
 
-      // Files for proofreading
-      if (proofreadFile != null) {
-        Proofread.initProofread(proofreadFile);
-      }
-      if (todoFile != null) {
-        TodoFile.writeTodoFile(todoFile);
-      }
+    // Files for proofreading
+    if (proofreadFile != null) {
+      Proofread.initProofread(proofreadFile);
+    }
+    if (todoFile != null) {
+      TodoFile.writeTodoFile(todoFile);
+    }
 
-      // HTML Pages
-      if (!ClearPage.htmlDirs.isEmpty()) {
-        for (String htmlDir : ClearPage.htmlDirs) {
-          File f = new File(htmlDir);
-          writeHTMLPages(f);
-        }
-      } else {
-        // Generate a simple index.html file
-        JarFile thisJar = JarUtils.jarForClass(Doclava.class, null);
-        if (thisJar != null) {
-          try {
-            JarUtils.copyResourcesToDirectory(thisJar, "assets/html", ClearPage.outputDir);
-          } catch (IOException e) {
-            System.err.println("Failed to copy html resources.");
-          }
+    // HTML Pages
+    phase = Metrics.begin("writeHTMLPages");
+    if (!ClearPage.htmlDirs.isEmpty()) {
+      for (String htmlDir : ClearPage.htmlDirs) {
+        File f = new File(htmlDir);
+        writeHTMLPages(f);
+      }
+    } else {
+      // Generate a simple index.html file
+      JarFile thisJar = JarUtils.jarForClass(Doclava.class, null);
+      if (thisJar != null) {
+        try {
+          JarUtils.copyResourcesToDirectory(thisJar, "assets/html", ClearPage.outputDir);
+        } catch (IOException e) {
+          System.err.println("Failed to copy html resources.");
         }
       }
+    }
 
-      writeAssets();
+    phase.end();
 
-      // Navigation tree
-      NavTree.writeNavTree(assetsOutputDir);
-      
-      if (yamlNavFile != null){
-        NavTree.writeYamlTree(assetsOutputDir,yamlNavFile);
-      }
+    phase = Metrics.begin("writeAssets");
+    writeAssets();
+    phase.end();
 
-      // Packages Pages
-      writePackages(javadocDir + "packages" + htmlExtension);
+    // Navigation tree
+    phase = Metrics.begin("NavTree");
+    NavTree.writeNavTree(assetsOutputDir);
+    
+    if (yamlNavFile != null){
+      NavTree.writeYamlTree(assetsOutputDir,yamlNavFile);
+    }
+    phase.end();
 
-      // Classes
-      writeClassLists();
-      writeClasses();
-      writeHierarchy();
-      // writeKeywords();
+    // Packages Pages
+    writePackages(javadocDir + "packages" + htmlExtension);
 
-      // Lists for JavaScript
-      writeLists();
-      if (keepListFile != null) {
-        writeKeepList(keepListFile);
-      }
+    // Classes
+    writeClassLists();
+    phase = Metrics.begin("writeClasses");
+    writeClasses();
+    phase.end();
+    writeHierarchy();
+    // writeKeywords();
 
-      // Sample Code
-      for (SampleCode sc : sampleCodes) {
-        sc.write(offlineMode);
-      }
+    // Lists for JavaScript
+    phase = Metrics.begin("writeLists");
+    writeLists();
+    phase.end();
+    if (keepListFile != null) {
+      writeKeepList(keepListFile);
+    }
 
-      // Index page
-      writeIndex();
+    // Sample Code
+    for (SampleCode sc : sampleCodes) {
+      sc.write(offlineMode);
+    }
 
-      Proofread.finishProofread(proofreadFile);
+    // Index page
+    writeIndex();
 
-      if (sdkValuePath != null) {
-        writeSdkValues(sdkValuePath);
-      }
+    Proofread.finishProofread(proofreadFile);
 
-      long time = System.nanoTime() - startTime;
-      System.out.println("DroidDoc took " + (time / 1000000000) + " sec. to write docs to "
-          + ClearPage.outputDir);
+    if (sdkValuePath != null) {
+      writeSdkValues(sdkValuePath);
     }
 
-    Errors.printErrors();
+    if (ClearPage.manifest != null) {
+      BuildManifest manifest = ClearPage.manifest;
+      manifest.finish();
+      System.out.println("Incremental build: " + manifest.renderedCount() + " pages rendered, "
+          + manifest.upToDateCount() + " up to date, " + manifest.deletedCount()
+          + " stale files deleted");
+    }
+    if (ClearPage.writeIfChanged) {
+      // only the manifest knows which files an earlier run left that this one didn't write
+      System.out.println("Output: " + ClearPage.writtenCount() + " pages written, "
+          + ClearPage.unchangedCount() + " unchanged"
+          + (ClearPage.manifest != null
+              ? ", " + ClearPage.manifest.deletedCount() + " deleted" : ""));
+    }
 
-    return !Errors.hadError;
+    if (outputZip != null) {
+      // the stubs step wrote the API file to disk before the archive was open
+      ClearPage.copyFile(currentApiFile, currentApiFile);
+      currentApiFile.delete();
+      // along with the directories it made for it, which leaves nothing outside the archive
+      File root = new File(ClearPage.outputDir).getAbsoluteFile();
+      File dir = currentApiFile.getAbsoluteFile().getParentFile();
+      while (dir != null && !dir.equals(root)
+          && dir.getPath().startsWith(root.getPath() + File.separator) && dir.delete()) {
+        dir = dir.getParentFile();
+      }
+    } else if (gzipPages) {
+      // nor was the sink there to give it a compressed copy
+      try {
+        ((GzipOutputSink) ClearPage.sink).compressFile(currentApiFile);
+      } catch (IOException e) {
+        System.err.println("error: could not compress " + currentApiFile + ": "
+            + e.getMessage());
+        return false;
+      }
+    }
+    return true;
   }
 
   private static void writeIndex() {
@@ -392,6 +737,7 @@ public class Doclava {
     // and so you cannot currently set it as a property.
     htmlExtension = ".html";
     // htmlExtension = data.getValue("template.extension", ".html");
+    Map<Character, String> chars = new HashMap<Character, String>();
     int i = 0;
     while (true) {
       String k = data.getValue("template.escape." + i + ".key", "");
@@ -403,9 +749,10 @@ public class Doclava {
         System.err.println("template.escape." + i + ".key must have a length of 1: " + k);
         return false;
       }
-      escapeChars.put(k.charAt(0), v);
+      chars.put(k.charAt(0), v);
       i++;
     }
+    setEscapeChars(chars);
     return true;
   }
 
@@ -458,34 +805,18 @@ public class Doclava {
         return true;
     }
 
+  /**
+   * Sets the characters that {@link #escape} replaces, as a template set lists them in
+   * template.escape.N.key and .value.
+   */
+  public static void setEscapeChars(Map<Character, String> chars) {
+    escapeChars.clear();
+    escapeChars.putAll(chars);
+    escaper = new HtmlEscaper(escapeChars);
+  }
+
   public static String escape(String s) {
-    if (escapeChars.size() == 0) {
-      return s;
-    }
-    StringBuffer b = null;
-    int begin = 0;
-    final int N = s.length();
-    for (int i = 0; i < N; i++) {
-      char c = s.charAt(i);
-      String mapped = escapeChars.get(c);
-      if (mapped != null) {
-        if (b == null) {
-          b = new StringBuffer(s.length() + mapped.length());
-        }
-        if (begin != i) {
-          b.append(s.substring(begin, i));
-        }
-        b.append(mapped);
-        begin = i + 1;
-      }
-    }
-    if (b != null) {
-      if (begin != N) {
-        b.append(s.substring(begin, N));
-      }
-      return b.toString();
-    }
-    return s;
+    return escaper.escape(s);
   }
 
   public static void setPageTitle(Data data, String title) {
@@ -605,11 +936,54 @@ public class Doclava {
     if (option.equals("-yaml")) {
       return 2;
   }
+    if (option.equals("-threads")) {
+      return 2;
+    }
+    if (option.equals("-incremental")) {
+      return 1;
+    }
+    if (option.equals("-writeifchanged")) {
+      return 1;
+    }
+    if (option.equals("-templatecache")) {
+      return 2;
+    }
+    if (option.equals("-outputzip")) {
+      return 2;
+    }
+    if (option.equals("-gzip")) {
+      return 1;
+    }
+    if (option.equals("-assetstore")) {
+      return 2;
+    }
+    if (option.equals("-metrics")) {
+      return 2;
+    }
+    if (option.equals("-snapshot")) {
+      return 2;
+    }
+    if (option.equals("-fromsnapshot")) {
+      return 2;
+    }
+    if (option.equals("-releasejavadoc")) {
+      return 1;
+    }
     return 0;
   }
 
   public static boolean validOptions(String[][] options, DocErrorReporter r) {
+    boolean zip = false;
+    boolean inPlace = false;
+    boolean gzip = false;
     for (String[] a : options) {
+      if (a[0].equals("-outputzip")) {
+        zip = true;
+      } else if (a[0].equals("-gzip")) {
+        gzip = true;
+      } else if (a[0].equals("-incremental") || a[0].equals("-writeifchanged")) {
+        inPlace = true;
+      }
       if (a[0].equals("-error") || a[0].equals("-warning") || a[0].equals("-hide")) {
         try {
           Integer.parseInt(a[1]);
@@ -618,6 +992,28 @@ public class Doclava {
           return false;
         }
       }
+      if (a[0].equals("-threads")) {
+        int n;
+        try {
+          n = Integer.parseInt(a[1]);
+        } catch (NumberFormatException e) {
+          n = 0;
+        }
+        if (n < 1) {
+          r.printError("bad -threads value must be a positive number: " + a[1]);
+          return false;
+        }
+      }
+    }
+    if (zip && inPlace) {
+      r.printError("-outputzip can't be used with -incremental or -writeifchanged, which update"
+          + " an existing output directory");
+      return false;
+    }
+    if (gzip && inPlace) {
+      r.printError("-gzip can't be used with -incremental or -writeifchanged, which leave pages"
+          + " untouched without rewriting their compressed copies");
+      return false;
     }
 
     return true;
@@ -635,71 +1031,32 @@ public class Doclava {
 
 
 
+  /**
+   * Returns the data for a page that lists the packages: the -hdf values, layered on top of the
+   * shared package index. Values set on the returned data stay on that page.
+   */
   public static Data makePackageHDF() {
-    Data data = makeHDF();
-    ClassInfo[] classes = Converter.rootClasses();
+    return new ChainedData(makeHDF(), packageIndex());
+  }
 
-    SortedMap<String, PackageInfo> sorted = new TreeMap<String, PackageInfo>();
-    for (ClassInfo cl : classes) {
-      PackageInfo pkg = cl.containingPackage();
-      String name;
-      if (pkg == null) {
-        name = "";
-      } else {
-        name = pkg.name();
-      }
-      sorted.put(name, pkg);
+  private static Data sPackageIndex = null;
+
+  /**
+   * Returns the read-only package index shared by all pages: the visible packages with their
+   * links, API levels and short descriptions, and the API level names. It is built the first
+   * time a page asks for it, after the since and federation tags have been applied.
+   */
+  private static Data packageIndex() {
+    if (sPackageIndex != null) {
+      return sPackageIndex;
     }
 
+    Data data = jSilver.createData();
     int i = 0;
-    for (String s : sorted.keySet()) {
-      PackageInfo pkg = sorted.get(s);
-
-      if (pkg.isHidden()) {
-        continue;
-      }
-      Boolean allHidden = true;
-      int pass = 0;
-      ClassInfo[] classesToCheck = null;
-      while (pass < 5) {
-        switch (pass) {
-          case 0:
-            classesToCheck = pkg.ordinaryClasses();
-            break;
-          case 1:
-            classesToCheck = pkg.enums();
-            break;
-          case 2:
-            classesToCheck = pkg.errors();
-            break;
-          case 3:
-            classesToCheck = pkg.exceptions();
-            break;
-          case 4:
-            classesToCheck = pkg.getInterfaces();
-            break;
-          default:
-            System.err.println("Error reading package: " + pkg.name());
-            break;
-        }
-        for (ClassInfo cl : classesToCheck) {
-          if (!cl.isHidden()) {
-            allHidden = false;
-            break;
-          }
-        }
-        if (!allHidden) {
-          break;
-        }
-        pass++;
-      }
-      if (allHidden) {
-        continue;
-      }
-
+    for (PackageInfo pkg : choosePackages()) {
       data.setValue("reference", "1");
       data.setValue("reference.apilevels", sinceTagger.hasVersions() ? "1" : "0");
-      data.setValue("docs.packages." + i + ".name", s);
+      data.setValue("docs.packages." + i + ".name", pkg.name());
       data.setValue("docs.packages." + i + ".link", pkg.htmlPage());
       data.setValue("docs.packages." + i + ".since.key", SinceTagger.keyForName(pkg.getSince()));
       data.setValue("docs.packages." + i + ".since.name", pkg.getSince());
@@ -708,7 +1065,8 @@ public class Doclava {
     }
 
     sinceTagger.writeVersionNames(data);
-    return data;
+    sPackageIndex = new UnmodifiableData(data);
+    return sPackageIndex;
   }
 
   private static void writeDirectory(File dir, String relative, JSilver js) {
@@ -949,25 +1307,19 @@ public class Doclava {
   public static void writePackages(String filename) {
     Data data = makePackageHDF();
 
-    int i = 0;
+    // the package list itself comes from the shared package index
     for (PackageInfo pkg : choosePackages()) {
       writePackage(pkg);
-
-      data.setValue("docs.packages." + i + ".name", pkg.name());
-      data.setValue("docs.packages." + i + ".link", pkg.htmlPage());
-      TagInfo.makeHDF(data, "docs.packages." + i + ".shortDescr", pkg.firstSentenceTags());
-
-      i++;
     }
 
     setPageTitle(data, "Package Index");
 
-    TagInfo.makeHDF(data, "root.descr", Converter.convertTags(root.inlineTags(), null));
+    TagInfo.makeHDF(data, "root.descr", Converter.rootTags());
 
     ClearPage.write(data, "packages.cs", filename);
     ClearPage.write(data, "package-list.cs", javadocDir + "package-list");
 
-    Proofread.writePackages(filename, Converter.convertTags(root.inlineTags(), null));
+    Proofread.writePackages(filename, Converter.rootTags());
   }
 
   public static void writePackage(PackageInfo pkg) {
@@ -1012,7 +1364,7 @@ public class Doclava {
     int i;
     Data data = makePackageHDF();
 
-    ClassInfo[] classes = PackageInfo.filterHidden(Converter.convertClasses(root.classes()));
+    ClassInfo[] classes = PackageInfo.filterHidden(Converter.rootClasses());
     if (classes.length == 0) {
       return;
     }
@@ -1098,29 +1450,108 @@ public class Doclava {
   public static void writeClasses() {
     ClassInfo[] classes = Converter.rootClasses();
     if (generateSources) {
-    	mHDFData.add(new String[] {"doclava.generate.sources", "true"});
-    	for (ClassInfo cl : classes) {
-	      Data data = makePackageHDF();
-	      if (!cl.isHidden()) {
-	        writeSource(cl, data);
-	        writeClass(cl, data);
-	      }
-	    }
-    } else {
-      for (ClassInfo cl : classes) {
-        Data data = makePackageHDF();
-        if (!cl.isHidden()) {
-          writeClass(cl, data);
+      mHDFData.add(new String[] {"doclava.generate.sources", "true"});
+    }
+    if (threads > 1) {
+      writeClassesParallel(classes);
+      return;
+    }
+    for (ClassInfo cl : classes) {
+      Data data = makePackageHDF();
+      if (!cl.isHidden()) {
+        if (generateSources) {
+          writeSource(cl, data);
+        }
+        writeClass(cl, data);
+      }
+    }
+  }
+
+  /**
+   * Guards the lazily initialized documentation model while class pages are rendered by more
+   * than one thread. Building a page's {@link Data} happens under this lock; the template
+   * rendering itself does not.
+   */
+  private static final Object MODEL_LOCK = new Object();
+
+  /**
+   * Renders the class pages on {@link #threads} worker threads. Each worker builds its own
+   * {@link Data} and renders class.cs (and source.cs when -generatesources is set). Proofread
+   * output is written on the calling thread, in class order, as each page completes.
+   */
+  private static void writeClassesParallel(ClassInfo[] classes) {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<ClassInfo> visible = new ArrayList<ClassInfo>();
+      List<Future<?>> pages = new ArrayList<Future<?>>();
+      for (final ClassInfo cl : classes) {
+        if (cl.isHidden()) {
+          continue;
         }
+        visible.add(cl);
+        pages.add(executor.submit(new Runnable() {
+          public void run() {
+            try {
+              renderClassPages(cl);
+            } finally {
+              Metrics.countWorkerAllocation();
+            }
+          }
+        }));
       }
+
+      for (int i = 0; i < pages.size(); i++) {
+        try {
+          pages.get(i).get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new RuntimeException("Interrupted while writing class pages", e);
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw new RuntimeException(cause);
+        }
+        ClassInfo cl = visible.get(i);
+        synchronized (MODEL_LOCK) {
+          Proofread.writeClass(cl.htmlPage(), cl);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
     }
   }
 
+  private static void renderClassPages(ClassInfo cl) {
+    Data data;
+    synchronized (MODEL_LOCK) {
+      data = makePackageHDF();
+      cl.makeHDF(data);
+    }
+
+    if (generateSources) {
+      try {
+        data.setValue("class.source", SampleTagInfo.escapeHtml(cl.getSource()));
+        setPageTitle(data, cl.name());
+        ClearPage.write(sourcePageData(data), "source.cs",
+            Doclava.javadocDir + cl.relativePath("-source"), classPageRenderer());
+      } catch (IOException e) {
+        Errors.error(Errors.IO_ERROR, null, "Could not find source file for " + cl.name());
+      }
+    }
+
+    setPageTitle(data, cl.name());
+    ClearPage.write(data, "class.cs", Doclava.javadocDir + cl.relativePath(), classPageRenderer());
+  }
+
   public static void writeClass(ClassInfo cl, Data data) {
     cl.makeHDF(data);
 
     setPageTitle(data, cl.name());
-    ClearPage.write(data, "class.cs", Doclava.javadocDir + cl.relativePath());
+    ClearPage.write(data, "class.cs", Doclava.javadocDir + cl.relativePath(), classPageRenderer());
 
     Proofread.writeClass(cl.htmlPage(), cl);
   }
@@ -1130,12 +1561,22 @@ public class Doclava {
 	    cl.makeHDF(data);
 	    data.setValue("class.source", SampleTagInfo.escapeHtml(cl.getSource()));
 	    setPageTitle(data, cl.name());
-	    ClearPage.write(data, "source.cs", Doclava.javadocDir + cl.relativePath("-source"));
+	    ClearPage.write(sourcePageData(data), "source.cs",
+	        Doclava.javadocDir + cl.relativePath("-source"), classPageRenderer());
 	  } catch (IOException e) {
 		  Errors.error(Errors.IO_ERROR, null, "Could not find source file for " + cl.name());
 	  }
   }
 
+  /**
+   * Returns the data to render a class's source page with. The template's own variables go to
+   * a layer of their own, so that the class page rendered next from the same data looks the same
+   * whether or not the source page was rendered first.
+   */
+  private static Data sourcePageData(Data classData) {
+    return new ChainedData(jSilver.createData(), classData);
+  }
+
   public static void makeClassListHDF(Data data, String base, ClassInfo[] classes) {
     for (int i = 0; i < classes.length; i++) {
       ClassInfo cl = classes[i];
@@ -1174,133 +1615,6 @@ public class Doclava {
     return s;
   }
 
-  /**
-   * Returns true if the given element has an @hide or @pending annotation.
-   */
-  private static boolean hasHideAnnotation(Doc doc) {
-    String comment = doc.getRawCommentText();
-    return comment.indexOf("@hide") != -1 || comment.indexOf("@pending") != -1;
-  }
-
-  /**
-   * Returns true if the given element is hidden.
-   */
-  private static boolean isHidden(Doc doc) {
-    // Methods, fields, constructors.
-    if (doc instanceof MemberDoc) {
-      return hasHideAnnotation(doc);
-    }
-
-    // Classes, interfaces, enums, annotation types.
-    if (doc instanceof ClassDoc) {
-      ClassDoc classDoc = (ClassDoc) doc;
-
-      // Check the containing package.
-      if (hasHideAnnotation(classDoc.containingPackage())) {
-        return true;
-      }
-
-      // Check the class doc and containing class docs if this is a
-      // nested class.
-      ClassDoc current = classDoc;
-      do {
-        if (hasHideAnnotation(current)) {
-          return true;
-        }
-
-        current = current.containingClass();
-      } while (current != null);
-    }
-
-    return false;
-  }
-
-  /**
-   * Filters out hidden elements.
-   */
-  private static Object filterHidden(Object o, Class<?> expected) {
-    if (o == null) {
-      return null;
-    }
-
-    Class<?> type = o.getClass();
-    if (type.getName().startsWith("com.sun.")) {
-      // TODO: Implement interfaces from superclasses, too.
-      return Proxy
-          .newProxyInstance(type.getClassLoader(), type.getInterfaces(), new HideHandler(o));
-    } else if (o instanceof Object[]) {
-      Class<?> componentType = expected.getComponentType();
-      Object[] array = (Object[]) o;
-      List<Object> list = new ArrayList<Object>(array.length);
-      for (Object entry : array) {
-        if ((entry instanceof Doc) && isHidden((Doc) entry)) {
-          continue;
-        }
-        list.add(filterHidden(entry, componentType));
-      }
-      return list.toArray((Object[]) Array.newInstance(componentType, list.size()));
-    } else {
-      return o;
-    }
-  }
-
-  /**
-   * Filters hidden elements out of method return values.
-   */
-  private static class HideHandler implements InvocationHandler {
-
-    private final Object target;
-
-    public HideHandler(Object target) {
-      this.target = target;
-    }
-
-    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-      String methodName = method.getName();
-      if (args != null) {
-        if (methodName.equals("compareTo") || methodName.equals("equals")
-            || methodName.equals("overrides") || methodName.equals("subclassOf")) {
-          args[0] = unwrap(args[0]);
-        }
-      }
-
-      if (methodName.equals("getRawCommentText")) {
-        return filterComment((String) method.invoke(target, args));
-      }
-
-      // escape "&" in disjunctive types.
-      if (proxy instanceof Type && methodName.equals("toString")) {
-        return ((String) method.invoke(target, args)).replace("&", "&amp;");
-      }
-
-      try {
-        return filterHidden(method.invoke(target, args), method.getReturnType());
-      } catch (InvocationTargetException e) {
-        throw e.getTargetException();
-      }
-    }
-
-    private String filterComment(String s) {
-      if (s == null) {
-        return null;
-      }
-
-      s = s.trim();
-
-      // Work around off by one error
-      while (s.length() >= 5 && s.charAt(s.length() - 5) == '{') {
-        s += "&nbsp;";
-      }
-
-      return s;
-    }
-
-    private static Object unwrap(Object proxy) {
-      if (proxy instanceof Proxy) return ((HideHandler) Proxy.getInvocationHandler(proxy)).target;
-      return proxy;
-    }
-  }
-
   /**
    * Collect the values used by the Dev tools and write them in files packaged with the SDK
    *
@@ -16,6 +16,7 @@
 
 package com.google.doclava;
 
+import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -23,12 +24,22 @@ public class Errors {
   public static boolean hadError = false;
   private static boolean warningsAreErrors = false;
   private static TreeSet<ErrorMessage> allErrors = new TreeSet<ErrorMessage>();
+  private static final ThreadLocal<List<Reported>> recording = new ThreadLocal<List<Reported>>();
+  private static final ThreadLocal<Boolean> muted = new ThreadLocal<Boolean>();
 
-  public static void error(ErrorCode error, SourcePositionInfo where, String text) {
+  public static synchronized void error(ErrorCode error, SourcePositionInfo where, String text) {
     if (error.getLevel() == HIDDEN) {
       return;
     }
 
+    List<Reported> recorded = recording.get();
+    if (recorded != null) {
+      recorded.add(new Reported(error, where, text));
+    }
+    if (muted.get() != null) {
+      return;
+    }
+
     int level = (!warningsAreErrors && error.getLevel() == WARNING) ? WARNING : ERROR;
     String which = level == WARNING ? " warning " : " error ";
     String message = which + error.getCode() + ": " + text;
@@ -44,7 +55,53 @@ public class Errors {
     }
   }
   
-  public static void clearErrors() {
+  /**
+   * Starts adding the errors this thread reports to {@code into}, as well as reporting them.
+   * Returns the list that was being recorded into before, to be passed to
+   * {@link #stopRecording}.
+   */
+  static List<Reported> startRecording(List<Reported> into) {
+    List<Reported> previous = recording.get();
+    recording.set(into);
+    return previous;
+  }
+
+  /**
+   * Stops recording into {@code into} and goes back to recording into {@code previous}, which
+   * gets everything {@code into} got as well.
+   */
+  static void stopRecording(List<Reported> into, List<Reported> previous) {
+    recording.set(previous);
+    if (previous != null) {
+      previous.addAll(into);
+    }
+  }
+
+  /**
+   * Stops reporting the errors this thread reports, or starts again if {@code mute} is false.
+   * They are still recorded. Returns whether they were muted before, to be passed back here
+   * when done.
+   */
+  static boolean mute(boolean mute) {
+    boolean previous = muted.get() != null;
+    muted.set(mute ? Boolean.TRUE : null);
+    return previous;
+  }
+
+  /** An error as it was reported while recording. */
+  static final class Reported {
+    final ErrorCode error;
+    final SourcePositionInfo where;
+    final String text;
+
+    Reported(ErrorCode error, SourcePositionInfo where, String text) {
+      this.error = error;
+      this.where = where;
+      this.text = text;
+    }
+  }
+
+  public static synchronized void clearErrors() {
     hadError = false;
     allErrors.clear();
   }
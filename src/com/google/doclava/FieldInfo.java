@@ -34,8 +34,7 @@ public class FieldInfo extends MemberInfo {
     super(rawCommentText, name, null, containingClass, realContainingClass, isPublic, isProtected,
           isPackagePrivate, isPrivate, isFinal, isStatic, isSynthetic,
           chooseKind(isFinal, isStatic, constantValue), position, annotations);
-    mIsTransient = isTransient;
-    mIsVolatile = isVolatile;
+    mFlags |= flag(isTransient, TRANSIENT) | flag(isVolatile, VOLATILE);
     mType = type;
     mConstantValue = constantValue;
   }
@@ -283,11 +282,11 @@ public class FieldInfo extends MemberInfo {
   }
 
   public boolean isTransient() {
-    return mIsTransient;
+    return hasFlag(TRANSIENT);
   }
 
   public boolean isVolatile() {
-    return mIsVolatile;
+    return hasFlag(VOLATILE);
   }
   
   // Check the declared value with a typed comparison, not a string comparison,
@@ -330,25 +329,25 @@ public class FieldInfo extends MemberInfo {
       consistent = false;
     }
 
-    if (mIsStatic != fInfo.mIsStatic) {
+    if (hasFlag(STATIC) != fInfo.hasFlag(STATIC)) {
       Errors.error(Errors.CHANGED_STATIC, fInfo.position(), "Field " + fInfo.qualifiedName()
           + " has changed 'static' qualifier");
       consistent = false;
     }
 
-    if (mIsFinal != fInfo.mIsFinal) {
+    if (hasFlag(FINAL) != fInfo.hasFlag(FINAL)) {
       Errors.error(Errors.CHANGED_FINAL, fInfo.position(), "Field " + fInfo.qualifiedName()
           + " has changed 'final' qualifier");
       consistent = false;
     }
 
-    if (mIsTransient != fInfo.mIsTransient) {
+    if (hasFlag(TRANSIENT) != fInfo.hasFlag(TRANSIENT)) {
       Errors.error(Errors.CHANGED_TRANSIENT, fInfo.position(), "Field " + fInfo.qualifiedName()
           + " has changed 'transient' qualifier");
       consistent = false;
     }
 
-    if (mIsVolatile != fInfo.mIsVolatile) {
+    if (hasFlag(VOLATILE) != fInfo.hasFlag(VOLATILE)) {
       Errors.error(Errors.CHANGED_VOLATILE, fInfo.position(), "Field " + fInfo.qualifiedName()
           + " has changed 'volatile' qualifier");
       consistent = false;
@@ -363,8 +362,8 @@ public class FieldInfo extends MemberInfo {
     return consistent;
   }
 
-  boolean mIsTransient;
-  boolean mIsVolatile;
+  private static final int TRANSIENT = 1 << 7;
+  private static final int VOLATILE = 1 << 8;
   boolean mDeprecatedKnown;
   boolean mIsDeprecated;
   TypeInfo mType;
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Writes each output to its own file, creating directories as needed.
+ *
+ * <p>Copied files are synced rather than rewritten: a destination with the same size and
+ * modification time as its source is left alone, and a copy is given its source's modification
+ * time so that the next run can tell. With an asset store, copies are hard links to files kept
+ * in the store, so any number of output trees share one copy of each asset.
+ */
+public class FileOutputSink implements OutputSink {
+  private static final Method TO_PATH;
+  private static final Method CREATE_LINK;
+  static {
+    // java.nio.file arrived in Java 7; without it, files are copied instead of linked
+    Method toPath = null;
+    Method createLink = null;
+    try {
+      Class<?> path = Class.forName("java.nio.file.Path");
+      toPath = File.class.getMethod("toPath");
+      createLink = Class.forName("java.nio.file.Files").getMethod("createLink", path, path);
+    } catch (ClassNotFoundException e) {
+    } catch (NoSuchMethodException e) {
+    }
+    TO_PATH = toPath;
+    CREATE_LINK = createLink;
+  }
+
+  private final File mAssetStore;
+  private final AtomicInteger mCopied = new AtomicInteger();
+  private final AtomicInteger mLinked = new AtomicInteger();
+  private final AtomicInteger mUpToDate = new AtomicInteger();
+
+  public FileOutputSink() {
+    this(null);
+  }
+
+  /**
+   * @param assetStore a directory to keep copied files in and hard-link them from, or null to
+   *        copy them directly
+   */
+  public FileOutputSink(File assetStore) {
+    mAssetStore = assetStore;
+  }
+
+  public OutputStream open(File file) throws IOException {
+    ClearPage.ensureDirectory(file);
+    // the file may be a link into an asset store, perhaps from an earlier run that used one;
+    // writing through it would change the store
+    file.delete();
+    return new FileOutputStream(file);
+  }
+
+  public void copy(File from, File to) throws IOException {
+    if (isSynced(from, to)) {
+      mUpToDate.incrementAndGet();
+      return;
+    }
+    ClearPage.ensureDirectory(to);
+    // as in open(), never write through a link into an asset store
+    to.delete();
+    if (mAssetStore != null && CREATE_LINK != null) {
+      File stored = storedCopy(from);
+      if (link(to, stored)) {
+        mLinked.incrementAndGet();
+        return;
+      }
+    }
+    transfer(from, to);
+    mCopied.incrementAndGet();
+  }
+
+  public boolean hasContent(File file, long size, long crc) throws IOException {
+    if (!file.isFile() || file.length() != size) {
+      return false;
+    }
+    CRC32 checksum = new CRC32();
+    InputStream in = new FileInputStream(file);
+    try {
+      byte[] buffer = new byte[8 * 1024];
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+        checksum.update(buffer, 0, n);
+      }
+    } finally {
+      in.close();
+    }
+    return checksum.getValue() == crc;
+  }
+
+  public void close() {}
+
+  /** Returns the number of files copied byte for byte. */
+  public int copiedCount() {
+    return mCopied.get();
+  }
+
+  /** Returns the number of files linked from the asset store. */
+  public int linkedCount() {
+    return mLinked.get();
+  }
+
+  /** Returns the number of copies that were already up to date. */
+  public int upToDateCount() {
+    return mUpToDate.get();
+  }
+
+  private static boolean isSynced(File from, File to) {
+    return to.isFile() && to.length() == from.length()
+        && to.lastModified() == from.lastModified();
+  }
+
+  /**
+   * Returns the store's copy of {@code from}, adding it first if needed. Stored files are named
+   * after the source's path, size and modification time, so a source that changes is stored
+   * again under a new name.
+   */
+  private File storedCopy(File from) throws IOException {
+    MessageDigest digest = BuildManifest.newDigest();
+    digest.update((from.getAbsolutePath() + '\0' + from.length() + '\0' + from.lastModified())
+        .getBytes("UTF-8"));
+    String hash = BuildManifest.toHex(digest.digest());
+    File stored = new File(mAssetStore, hash.substring(0, 2) + File.separator + hash);
+    if (!isSynced(from, stored)) {
+      // copy under a temporary name so that other builds sharing the store never link to a
+      // partial file
+      File partial = new File(stored.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+      ClearPage.ensureDirectory(partial);
+      transfer(from, partial);
+      if (!partial.renameTo(stored) && !isSynced(from, stored)) {
+        partial.delete();
+        throw new IOException("could not add " + from + " to the asset store");
+      }
+      partial.delete();
+    }
+    return stored;
+  }
+
+  private static boolean link(File link, File existing) {
+    try {
+      CREATE_LINK.invoke(null, TO_PATH.invoke(link), TO_PATH.invoke(existing));
+      return true;
+    } catch (IllegalAccessException e) {
+      return false;
+    } catch (InvocationTargetException e) {
+      // e.g. the store is on another filesystem
+      return false;
+    }
+  }
+
+  /**
+   * Copies {@code from} to {@code to} with a channel transfer, which lets the operating system
+   * move the bytes without passing them through a Java buffer, and gives {@code to} the source's
+   * modification time.
+   */
+  private static void transfer(File from, File to) throws IOException {
+    FileInputStream in = new FileInputStream(from);
+    try {
+      FileOutputStream out = new FileOutputStream(to);
+      try {
+        FileChannel source = in.getChannel();
+        FileChannel target = out.getChannel();
+        long size = source.size();
+        long position = 0;
+        while (position < size) {
+          position += source.transferTo(position, size - position, target);
+        }
+      } finally {
+        out.close();
+      }
+    } finally {
+      in.close();
+    }
+    to.setLastModified(from.lastModified());
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a gzip-compressed copy next to each file written through another sink, for servers that
+ * send pre-compressed files. The copy of {@code foo.html} is {@code foo.html.gz}.
+ *
+ * <p>A file's bytes are compressed as they are written, on the thread writing them, so nothing is
+ * held beyond the deflater's own buffers however large the page is. Pages rendered on different
+ * threads are compressed in parallel.
+ */
+public class GzipOutputSink implements OutputSink {
+  /** Formats that are compressed already and gain nothing from gzip. */
+  private static final String[] COMPRESSED = {
+      ".gz", ".zip", ".jar", ".png", ".gif", ".jpg", ".jpeg", ".ico", ".woff", ".woff2"};
+
+  private final OutputSink mOut;
+
+  public GzipOutputSink(OutputSink out) {
+    mOut = out;
+  }
+
+  public OutputStream open(File file) throws IOException {
+    OutputStream out = mOut.open(file);
+    if (!shouldCompress(file.getName())) {
+      return out;
+    }
+    try {
+      return new TeeStream(out, openCompressed(file));
+    } catch (IOException e) {
+      out.close();
+      throw e;
+    }
+  }
+
+  public void copy(File from, File to) throws IOException {
+    ClearPage.copyToStream(from, open(to));
+  }
+
+  public boolean hasContent(File file, long size, long crc) {
+    return false; // the compressed copy is only made when the file is written
+  }
+
+  /**
+   * Writes the compressed copy of a file that was written straight to disk rather than through
+   * this sink.
+   */
+  public void compressFile(File file) throws IOException {
+    if (shouldCompress(file.getName())) {
+      ClearPage.copyToStream(file, openCompressed(file));
+    }
+  }
+
+  public void close() throws IOException {
+    mOut.close();
+  }
+
+  private static boolean shouldCompress(String name) {
+    name = name.toLowerCase();
+    for (String extension : COMPRESSED) {
+      if (name.endsWith(extension)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns a stream that writes {@code file}'s compressed copy. */
+  private OutputStream openCompressed(File file) throws IOException {
+    OutputStream out = mOut.open(new File(file.getPath() + ".gz"));
+    try {
+      return new GZIPOutputStream(out, 8 * 1024) {
+        {
+          def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+      };
+    } catch (IOException e) {
+      out.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Passes bytes on to both the real output and its compressed copy.
+   */
+  private static final class TeeStream extends OutputStream {
+    private final OutputStream mPage;
+    private final OutputStream mGz;
+    private boolean mClosed;
+
+    TeeStream(OutputStream page, OutputStream gz) {
+      mPage = page;
+      mGz = gz;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      mPage.write(b);
+      mGz.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      mPage.write(b, off, len);
+      mGz.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      mPage.flush();
+      mGz.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (mClosed) {
+        return;
+      }
+      mClosed = true;
+      try {
+        mPage.close();
+      } finally {
+        mGz.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Replaces characters with the strings they map to, such as {@code <} with {@code &lt;}. The
+ * replacements for ASCII characters are kept in a table indexed by the character, so escaping
+ * doesn't box each character to look it up. Text with nothing to escape is returned as it is.
+ */
+class HtmlEscaper {
+  private static final int TABLE_SIZE = 128;
+
+  /** Escapes nothing. */
+  static final HtmlEscaper NONE = new HtmlEscaper(new HashMap<Character, String>());
+
+  /** Escapes the characters that would otherwise be read as markup: &amp;, &lt; and &gt;. */
+  static final HtmlEscaper HTML;
+
+  static {
+    Map<Character, String> html = new HashMap<Character, String>();
+    html.put('&', "&amp;");
+    html.put('<', "&lt;");
+    html.put('>', "&gt;");
+    HTML = new HtmlEscaper(html);
+  }
+
+  private final String[] mTable = new String[TABLE_SIZE];
+  private final Map<Character, String> mOthers = new HashMap<Character, String>();
+  private final boolean mEmpty;
+
+  HtmlEscaper(Map<Character, String> replacements) {
+    for (Map.Entry<Character, String> e : replacements.entrySet()) {
+      char c = e.getKey();
+      if (c < TABLE_SIZE) {
+        mTable[c] = e.getValue();
+      } else {
+        mOthers.put(c, e.getValue());
+      }
+    }
+    mEmpty = replacements.isEmpty();
+  }
+
+  private String replacement(char c) {
+    if (c < TABLE_SIZE) {
+      return mTable[c];
+    }
+    return mOthers.isEmpty() ? null : mOthers.get(c);
+  }
+
+  /**
+   * Returns the index of the first character in {@code s} that has a replacement, or -1 if
+   * there isn't one.
+   */
+  private int firstEscaped(CharSequence s) {
+    if (mEmpty) {
+      return -1;
+    }
+    final int N = s.length();
+    for (int i = 0; i < N; i++) {
+      if (replacement(s.charAt(i)) != null) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns {@code s} with its characters replaced, or {@code s} itself if none of them have a
+   * replacement.
+   */
+  String escape(String s) {
+    int first = firstEscaped(s);
+    if (first < 0) {
+      return s;
+    }
+    StringBuilder b = new StringBuilder(s.length() + 16);
+    b.append(s, 0, first);
+    append(s, first, b);
+    return b.toString();
+  }
+
+  /**
+   * Appends {@code s} to {@code out} with its characters replaced.
+   */
+  void escape(CharSequence s, StringBuilder out) {
+    int first = firstEscaped(s);
+    if (first < 0) {
+      out.append(s);
+      return;
+    }
+    out.append(s, 0, first);
+    append(s, first, out);
+  }
+
+  private void append(CharSequence s, int start, StringBuilder out) {
+    int begin = start;
+    final int N = s.length();
+    for (int i = start; i < N; i++) {
+      String mapped = replacement(s.charAt(i));
+      if (mapped != null) {
+        if (begin != i) {
+          out.append(s, begin, i);
+        }
+        out.append(mapped);
+        begin = i + 1;
+      }
+    }
+    if (begin != N) {
+      out.append(s, begin, N);
+    }
+  }
+}
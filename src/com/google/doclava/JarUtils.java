@@ -17,11 +17,18 @@
 package com.google.doclava;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -52,44 +59,95 @@ public class JarUtils {
   }
 
   /**
-   * Copies a directory from a jar file to an external directory.
+   * Copies a directory from a jar file to an external directory. Entries are extracted on
+   * several threads, and an entry whose destination already has the size and CRC recorded in
+   * the jar is not written again.
    */
-  public static void copyResourcesToDirectory(JarFile fromJar, String jarDir, String destDir)
+  public static void copyResourcesToDirectory(final JarFile fromJar, String jarDir, String destDir)
       throws IOException {
+    List<JarEntry> selected = new ArrayList<JarEntry>();
     for (Enumeration<JarEntry> entries = fromJar.entries(); entries.hasMoreElements();) {
       JarEntry entry = entries.nextElement();
       if (entry.getName().startsWith(jarDir + "/") && !entry.isDirectory()) {
-        File dest = new File(destDir + "/" + entry.getName().substring(jarDir.length() + 1));
-        File parent = dest.getParentFile();
-        if (parent != null) {
-          parent.mkdirs();
-        }
-
-        FileOutputStream out = new FileOutputStream(dest);
-        InputStream in = fromJar.getInputStream(entry);
+        selected.add(entry);
+      }
+    }
+    if (selected.isEmpty()) {
+      return;
+    }
 
+    int threads = Math.min(selected.size(), Runtime.getRuntime().availableProcessors());
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Void>> copies = new ArrayList<Future<Void>>();
+      for (final JarEntry entry : selected) {
+        final File dest =
+            new File(destDir + "/" + entry.getName().substring(jarDir.length() + 1));
+        copies.add(executor.submit(new Callable<Void>() {
+          public Void call() throws IOException {
+            try {
+              copyEntry(fromJar, entry, dest);
+            } finally {
+              Metrics.countWorkerAllocation();
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> copy : copies) {
         try {
-          byte[] buffer = new byte[8 * 1024];
-
-          int s = 0;
-          while ((s = in.read(buffer)) > 0) {
-            out.write(buffer, 0, s);
+          copy.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while copying assets from jar file");
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
           }
-        } catch (IOException e) {
-           IOException ioException = new IOException("Could not copy asset from jar file");
-           ioException.initCause(e);
-           throw ioException;
-        } finally {
-          try {
-            in.close();
-          } catch (IOException ignored) {}
-          try {
-            out.close();
-          } catch (IOException ignored) {}
+          throw new RuntimeException(cause);
         }
       }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void copyEntry(JarFile fromJar, JarEntry entry, File dest) throws IOException {
+    if (ClearPage.manifest != null) {
+      ClearPage.manifest.record(dest);
+    }
+    if (entry.getSize() >= 0 && entry.getCrc() != -1
+        && ClearPage.sink.hasContent(dest, entry.getSize(), entry.getCrc())) {
+      return;
     }
 
+    OutputStream out = ClearPage.sink.open(dest);
+    InputStream in = fromJar.getInputStream(entry);
+
+    try {
+      byte[] buffer = new byte[8 * 1024];
+
+      int s = 0;
+      while ((s = in.read(buffer)) > 0) {
+        out.write(buffer, 0, s);
+      }
+    } catch (IOException e) {
+       IOException ioException = new IOException("Could not copy asset from jar file");
+       ioException.initCause(e);
+       throw ioException;
+    } finally {
+      try {
+        in.close();
+      } catch (IOException ignored) {}
+      try {
+        out.close();
+      } catch (IOException ignored) {}
+    }
   }
 
   private JarUtils() {} // non-instantiable
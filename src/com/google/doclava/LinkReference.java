@@ -19,6 +19,10 @@ package com.google.doclava;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Class that represents what you see in an link or see tag. This is factored out of SeeTagInfo so
@@ -67,17 +71,106 @@ public class LinkReference {
    */
   private static final Pattern QUOTE_PATTERN = Pattern.compile("^\"([^\"]*)\"[ \n\r\t]*$");
 
+  /** Set if the reference couldn't be parsed or didn't resolve to anything. */
+  private boolean unresolved;
+
+  /**
+   * Links already resolved, by base and text. The same references are made from the same class
+   * over and over, so each is resolved once and the result shared. They are only kept once the
+   * model is fully converted, when {@link SymbolIndex} is built, since before then a name might
+   * not resolve to what it will later.
+   */
+  private static final ConcurrentMap<Key, Resolved> sResolved =
+      new ConcurrentHashMap<Key, Resolved>();
+  private static final AtomicLong sHits = new AtomicLong();
+  private static final AtomicLong sMisses = new AtomicLong();
+  private static final AtomicLong sUnresolved = new AtomicLong();
+
   /**
    * Parse and resolve a link string.
    * 
    * @param text the original text
    * @param base the class or whatever that this link is on
    * @param pos the original position in the source document
-   * @return a new link reference. It always returns something. If there was an error, it logs it
-   *         and fills in href and label with error text.
+   * @return a link reference. It always returns something. If there was an error, it logs it
+   *         and fills in href and label with error text. The same reference from the same base
+   *         gets the same object, so it must not be changed; its errors are logged again at each
+   *         position it's used from.
    */
   public static LinkReference parse(String text, ContainerInfo base, SourcePositionInfo pos,
       boolean printOnErrors) {
+    if (!SymbolIndex.isBuilt()) {
+      // still converting, maybe on more than one thread
+      synchronized (Converter.LOCK) {
+        return resolve(text, base, pos, printOnErrors);
+      }
+    }
+
+    // the text is used as it is: whitespace around the target changes the label
+    Key key = new Key(text, base, printOnErrors);
+    Resolved resolved = sResolved.get(key);
+    if (resolved != null) {
+      sHits.incrementAndGet();
+      for (Errors.Reported e : resolved.errors) {
+        Errors.error(e.error, pos, e.text);
+      }
+    } else {
+      sMisses.incrementAndGet();
+      List<Errors.Reported> errors = new ArrayList<Errors.Reported>();
+      List<Errors.Reported> previous = Errors.startRecording(errors);
+      LinkReference result;
+      try {
+        result = resolve(text, base, pos, printOnErrors);
+      } finally {
+        Errors.stopRecording(errors, previous);
+      }
+      // resolving can load classes, and report errors about them at their own positions
+      for (int i = errors.size() - 1; i >= 0; i--) {
+        if (errors.get(i).where != pos) {
+          errors.remove(i);
+        }
+      }
+      resolved = new Resolved(result, errors);
+      sResolved.putIfAbsent(key, resolved);
+    }
+    if (resolved.link.unresolved) {
+      sUnresolved.incrementAndGet();
+    }
+    return resolved.link;
+  }
+
+  /**
+   * Resolves a link for the names it looks up in javadoc, without keeping the result or
+   * reporting its errors, so that it resolves the same way once javadoc has been let go of. See
+   * {@link Converter#releaseJavadoc}.
+   */
+  static void resolveAhead(String text, ContainerInfo base, SourcePositionInfo pos,
+      boolean printOnErrors) {
+    boolean wasMuted = Errors.mute(true);
+    try {
+      resolve(text, base, pos, printOnErrors);
+    } finally {
+      Errors.mute(wasMuted);
+    }
+  }
+
+  /** Returns how many links were found already resolved. */
+  public static long hitCount() {
+    return sHits.get();
+  }
+
+  /** Returns how many links had to be resolved. */
+  public static long missCount() {
+    return sMisses.get();
+  }
+
+  /** Returns how many links, hits or misses, didn't resolve to anything. */
+  public static long unresolvedCount() {
+    return sUnresolved.get();
+  }
+
+  private static LinkReference resolve(String text, ContainerInfo base, SourcePositionInfo pos,
+      boolean printOnErrors) {
     LinkReference result = new LinkReference();
     result.text = text;
 
@@ -120,6 +213,7 @@ public class LinkReference {
     }
     if (index == len && pairs != 0) {
       Errors.error(Errors.UNRESOLVED_LINK, pos, "unable to parse link/see tag: " + text.trim());
+      result.unresolved = true;
       return result;
     }
 
@@ -245,12 +339,10 @@ public class LinkReference {
     } else {
       // they provided something, maybe it's a class or a package
       if (cl != null) {
-        result.classInfo = cl.extendedFindClass(ref);
-        if (result.classInfo == null) {
-          result.classInfo = cl.findClass(ref);
-        }
-        if (result.classInfo == null) {
-          result.classInfo = cl.findInnerClass(ref);
+        if (SymbolIndex.isBuilt()) {
+          result.classInfo = SymbolIndex.findClass(cl, ref);
+        } else {
+          result.classInfo = SymbolIndex.findClassInScope(cl, ref);
         }
       }
       if (result.classInfo == null) {
@@ -311,6 +403,7 @@ public class LinkReference {
       if (!matcher.matches()) {
         Errors.error(Errors.UNRESOLVED_LINK, pos, "unbalanced quoted link/see tag: " + text.trim());
         result.makeError();
+        result.unresolved = true;
         return result;
       }
       skipHref = true;
@@ -322,6 +415,7 @@ public class LinkReference {
       if (!matcher.matches()) {
         Errors.error(Errors.UNRESOLVED_LINK, pos, "invalid <a> link/see tag: " + text.trim());
         result.makeError();
+        result.unresolved = true;
         return result;
       }
       result.isLocal = false;
@@ -362,6 +456,7 @@ public class LinkReference {
             + "\" in " + ((base != null) ? base.qualifiedName() : "[null]"));
       }
       result.makeError();
+      result.unresolved = true;
     } else if (result.memberInfo != null && !result.memberInfo.checkLevel()) {
       if (printOnErrors && (base == null || base.checkLevel())) {
         Errors.error(Errors.HIDDEN_LINK, pos, "Link to hidden member: " + text.trim());
@@ -409,4 +504,43 @@ public class LinkReference {
 
   /** private. **/
   private LinkReference() {}
+
+  private static final class Resolved {
+    final LinkReference link;
+    /** The errors resolving it reported at the link's own position. */
+    final List<Errors.Reported> errors;
+
+    Resolved(LinkReference link, List<Errors.Reported> errors) {
+      this.link = link;
+      this.errors = errors;
+    }
+  }
+
+  private static final class Key {
+    private final String mText;
+    private final ContainerInfo mBase;
+    private final boolean mPrintOnErrors;
+
+    Key(String text, ContainerInfo base, boolean printOnErrors) {
+      mText = text;
+      mBase = base;
+      mPrintOnErrors = printOnErrors;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key that = (Key) o;
+      return mBase == that.mBase && mPrintOnErrors == that.mPrintOnErrors
+          && mText.equals(that.mText);
+    }
+
+    @Override
+    public int hashCode() {
+      return (mText.hashCode() * 31 + System.identityHashCode(mBase)) * 2
+          + (mPrintOnErrors ? 1 : 0);
+    }
+  }
 }
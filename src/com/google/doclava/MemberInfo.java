@@ -27,19 +27,23 @@ public abstract class MemberInfo extends DocInfo implements Comparable, Scoped {
     mSignature = signature;
     mContainingClass = containingClass;
     mRealContainingClass = realContainingClass;
-    mIsPublic = isPublic;
-    mIsProtected = isProtected;
-    mIsPackagePrivate = isPackagePrivate;
-    mIsPrivate = isPrivate;
-    mIsFinal = isFinal;
-    mIsStatic = isStatic;
-    mIsSynthetic = isSynthetic;
+    mFlags = flag(isPublic, PUBLIC) | flag(isProtected, PROTECTED)
+        | flag(isPackagePrivate, PACKAGE_PRIVATE) | flag(isPrivate, PRIVATE)
+        | flag(isFinal, FINAL) | flag(isStatic, STATIC) | flag(isSynthetic, SYNTHETIC);
     mKind = kind;
     mAnnotations = annotations;
   }
 
   public abstract boolean isExecutable();
 
+  static int flag(boolean set, int flag) {
+    return set ? flag : 0;
+  }
+
+  final boolean hasFlag(int flag) {
+    return (mFlags & flag) != 0;
+  }
+
   public String anchor() {
     if (mSignature != null) {
       return mName + mSignature;
@@ -77,19 +81,19 @@ public abstract class MemberInfo extends DocInfo implements Comparable, Scoped {
   }
 
   public boolean isPublic() {
-    return mIsPublic;
+    return hasFlag(PUBLIC);
   }
 
   public boolean isProtected() {
-    return mIsProtected;
+    return hasFlag(PROTECTED);
   }
 
   public boolean isPackagePrivate() {
-    return mIsPackagePrivate;
+    return hasFlag(PACKAGE_PRIVATE);
   }
 
   public boolean isPrivate() {
-    return mIsPrivate;
+    return hasFlag(PRIVATE);
   }
   
   public String scope() {
@@ -107,15 +111,15 @@ public abstract class MemberInfo extends DocInfo implements Comparable, Scoped {
   }
 
   public boolean isStatic() {
-    return mIsStatic;
+    return hasFlag(STATIC);
   }
 
   public boolean isFinal() {
-    return mIsFinal;
+    return hasFlag(FINAL);
   }
 
   public boolean isSynthetic() {
-    return mIsSynthetic;
+    return hasFlag(SYNTHETIC);
   }
 
   @Override
@@ -124,7 +128,8 @@ public abstract class MemberInfo extends DocInfo implements Comparable, Scoped {
   }
 
   public boolean checkLevel() {
-    return Doclava.checkLevel(mIsPublic, mIsProtected, mIsPackagePrivate, mIsPrivate, isHidden());
+    return Doclava.checkLevel(hasFlag(PUBLIC), hasFlag(PROTECTED), hasFlag(PACKAGE_PRIVATE),
+        hasFlag(PRIVATE), isHidden());
   }
 
   public String kind() {
@@ -139,13 +144,15 @@ public abstract class MemberInfo extends DocInfo implements Comparable, Scoped {
   ClassInfo mRealContainingClass;
   String mName;
   String mSignature;
-  boolean mIsPublic;
-  boolean mIsProtected;
-  boolean mIsPackagePrivate;
-  boolean mIsPrivate;
-  boolean mIsFinal;
-  boolean mIsStatic;
-  boolean mIsSynthetic;
+  // The modifiers, as bits of mFlags. Subclasses keep theirs in the bits above SYNTHETIC.
+  static final int PUBLIC = 1 << 0;
+  static final int PROTECTED = 1 << 1;
+  static final int PACKAGE_PRIVATE = 1 << 2;
+  static final int PRIVATE = 1 << 3;
+  static final int FINAL = 1 << 4;
+  static final int STATIC = 1 << 5;
+  static final int SYNTHETIC = 1 << 6;
+  int mFlags;
   String mKind;
   private AnnotationInstanceInfo[] mAnnotations;
 
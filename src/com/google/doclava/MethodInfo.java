@@ -243,8 +243,8 @@ public class MethodInfo extends MemberInfo implements AbstractMethodInfo {
     MethodInfo result =
         new MethodInfo(getRawCommentText(), mTypeParameters, name(), signature(),
             newContainingClass, realContainingClass(), isPublic(), isProtected(),
-            isPackagePrivate(), isPrivate(), isFinal(), isStatic(), isSynthetic(), mIsAbstract,
-            mIsSynchronized, mIsNative, mIsAnnotationElement, kind(), mFlatSignature,
+            isPackagePrivate(), isPrivate(), isFinal(), isStatic(), isSynthetic(), isAbstract(),
+            isSynchronized(), isNative(), isAnnotationElement(), kind(), mFlatSignature,
             mOverriddenMethod, mReturnType, mParameters, mThrownExceptions, position(),
             annotations());
     result.init(mDefaultAnnotationElementValue);
@@ -273,11 +273,9 @@ public class MethodInfo extends MemberInfo implements AbstractMethodInfo {
     }
 
     mReasonOpened = "0:0";
-    mIsAnnotationElement = isAnnotationElement;
+    mFlags |= flag(isAnnotationElement, ANNOTATION_ELEMENT) | flag(isAbstract, ABSTRACT)
+        | flag(isSynchronized, SYNCHRONIZED) | flag(isNative, NATIVE);
     mTypeParameters = typeParameters;
-    mIsAbstract = isAbstract;
-    mIsSynchronized = isSynchronized;
-    mIsNative = isNative;
     mFlatSignature = flatSignature;
     mOverriddenMethod = overriddenMethod;
     mReturnType = returnType;
@@ -290,15 +288,15 @@ public class MethodInfo extends MemberInfo implements AbstractMethodInfo {
   }
 
   public boolean isAbstract() {
-    return mIsAbstract;
+    return hasFlag(ABSTRACT);
   }
 
   public boolean isSynchronized() {
-    return mIsSynchronized;
+    return hasFlag(SYNCHRONIZED);
   }
 
   public boolean isNative() {
-    return mIsNative;
+    return hasFlag(NATIVE);
   }
 
   public String flatSignature() {
@@ -541,10 +539,10 @@ public class MethodInfo extends MemberInfo implements AbstractMethodInfo {
 
     if (mReturnType != null) {
       returnType().makeHDF(data, base + ".returnType", false, typeVariables());
-      data.setValue(base + ".abstract", mIsAbstract ? "abstract" : "");
+      data.setValue(base + ".abstract", hasFlag(ABSTRACT) ? "abstract" : "");
     }
 
-    data.setValue(base + ".synchronized", mIsSynchronized ? "synchronized" : "");
+    data.setValue(base + ".synchronized", hasFlag(SYNCHRONIZED) ? "synchronized" : "");
     data.setValue(base + ".final", isFinal() ? "final" : "");
     data.setValue(base + ".static", isStatic() ? "static" : "");
 
@@ -603,7 +601,11 @@ public class MethodInfo extends MemberInfo implements AbstractMethodInfo {
   }
 
   public boolean isAnnotationElement() {
-    return mIsAnnotationElement;
+    return hasFlag(ANNOTATION_ELEMENT);
+  }
+
+  MethodInfo overriddenMethod() {
+    return mOverriddenMethod;
   }
 
   public AnnotationValueInfo defaultAnnotationElementValue() {
@@ -611,11 +613,15 @@ public class MethodInfo extends MemberInfo implements AbstractMethodInfo {
   }
 
   public void setVarargs(boolean set) {
-    mIsVarargs = set;
+    if (set) {
+      mFlags |= VARARGS;
+    } else {
+      mFlags &= ~VARARGS;
+    }
   }
 
   public boolean isVarArgs() {
-    return mIsVarargs;
+    return hasFlag(VARARGS);
   }
 
   @Override
@@ -675,11 +681,11 @@ public class MethodInfo extends MemberInfo implements AbstractMethodInfo {
   private String mFlatSignature;
   private MethodInfo mOverriddenMethod;
   private TypeInfo mReturnType;
-  private boolean mIsAnnotationElement;
-  private boolean mIsAbstract;
-  private boolean mIsSynchronized;
-  private boolean mIsNative;
-  private boolean mIsVarargs;
+  private static final int ANNOTATION_ELEMENT = 1 << 7;
+  private static final int ABSTRACT = 1 << 8;
+  private static final int SYNCHRONIZED = 1 << 9;
+  private static final int NATIVE = 1 << 10;
+  private static final int VARARGS = 1 << 11;
   private boolean mDeprecatedKnown;
   private boolean mIsDeprecated;
   private ParameterInfo[] mParameters;
@@ -736,24 +742,24 @@ public class MethodInfo extends MemberInfo implements AbstractMethodInfo {
           + " has changed return type from " + mReturnType + " to " + mInfo.mReturnType);
     }
 
-    if (mIsAbstract != mInfo.mIsAbstract) {
+    if (hasFlag(ABSTRACT) != mInfo.hasFlag(ABSTRACT)) {
       consistent = false;
       Errors.error(Errors.CHANGED_ABSTRACT, mInfo.position(), "Method " + mInfo.qualifiedName()
           + " has changed 'abstract' qualifier");
     }
 
-    if (mIsNative != mInfo.mIsNative) {
+    if (hasFlag(NATIVE) != mInfo.hasFlag(NATIVE)) {
       consistent = false;
       Errors.error(Errors.CHANGED_NATIVE, mInfo.position(), "Method " + mInfo.qualifiedName()
           + " has changed 'native' qualifier");
     }
 
-    if (mIsFinal != mInfo.mIsFinal) {
+    if (hasFlag(FINAL) != mInfo.hasFlag(FINAL)) {
       // Compiler-generated methods vary in their 'final' qual between versions of
       // the compiler, so this check needs to be quite narrow. A change in 'final'
       // status of a method is only relevant if (a) the method is not declared 'static'
       // and (b) the method's class is not itself 'final'.
-      if (!mIsStatic) {
+      if (!hasFlag(STATIC)) {
         if ((containingClass() == null) || (!containingClass().isFinal())) {
           consistent = false;
           Errors.error(Errors.CHANGED_FINAL, mInfo.position(), "Method " + mInfo.qualifiedName()
@@ -762,7 +768,7 @@ public class MethodInfo extends MemberInfo implements AbstractMethodInfo {
       }
     }
 
-    if (mIsStatic != mInfo.mIsStatic) {
+    if (hasFlag(STATIC) != mInfo.hasFlag(STATIC)) {
       consistent = false;
       Errors.error(Errors.CHANGED_STATIC, mInfo.position(), "Method " + mInfo.qualifiedName()
           + " has changed 'static' qualifier");
@@ -783,10 +789,10 @@ public class MethodInfo extends MemberInfo implements AbstractMethodInfo {
     // see JLS 3 13.4.20 "Adding or deleting a synchronized modifier of a method does not break "
     //  "compatibility with existing binaries."
     /*
-    if (mIsSynchronized != mInfo.mIsSynchronized) {
+    if (hasFlag(SYNCHRONIZED) != mInfo.hasFlag(SYNCHRONIZED)) {
       Errors.error(Errors.CHANGED_SYNCHRONIZED, mInfo.position(), "Method " + mInfo.qualifiedName()
-          + " has changed 'synchronized' qualifier from " + mIsSynchronized + " to "
-          + mInfo.mIsSynchronized);
+          + " has changed 'synchronized' qualifier from " + isSynchronized() + " to "
+          + mInfo.isSynchronized());
       consistent = false;
     }
     */
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timings for the phases of a run, written as a JSON report with -metrics. Each phase records
+ * its wall time, the CPU time used by the whole process while it ran, the bytes allocated, and
+ * the pages and bytes it wrote.
+ *
+ * <p>Allocation is counted for the thread that runs the phase plus the worker threads that
+ * report in with {@link #countWorkerAllocation()}. CPU time and allocation need a HotSpot
+ * compatible JVM; elsewhere they are reported as -1.
+ *
+ * <p>The report also has the counters set with {@link #setCounter}.
+ */
+public class Metrics {
+  private static boolean sEnabled = false;
+  private static long sStartNanos;
+  private static final List<Phase> sPhases = new ArrayList<Phase>();
+  private static final Map<String, Long> sCounters = new LinkedHashMap<String, Long>();
+
+  /** Bytes allocated by worker threads, as reported by {@link #countWorkerAllocation()}. */
+  private static final AtomicLong sWorkerAllocated = new AtomicLong();
+  private static final ThreadLocal<long[]> sWorkerSeen = new ThreadLocal<long[]>() {
+    @Override
+    protected long[] initialValue() {
+      return new long[1];
+    }
+  };
+
+  private static final Phase DISABLED = new Phase(null);
+
+  /** Starts collecting metrics; the run's total time is measured from here. */
+  public static void enable() {
+    sEnabled = true;
+    sStartNanos = System.nanoTime();
+  }
+
+  public static boolean isEnabled() {
+    return sEnabled;
+  }
+
+  /**
+   * Starts timing a phase. Call {@link Phase#end()} on the result when the phase is over.
+   */
+  public static Phase begin(String name) {
+    if (!sEnabled) {
+      return DISABLED;
+    }
+    Phase phase = new Phase(name);
+    phase.mWallNanos = System.nanoTime();
+    phase.mCpuNanos = processCpuNanos();
+    phase.mAllocated = allocatedBytes();
+    phase.mPages = pagesWritten();
+    phase.mBytes = ClearPage.bytesWrittenCount();
+    return phase;
+  }
+
+  /**
+   * Adds what the current worker thread has allocated since it last reported to the phase that
+   * is running. Pools call this at the end of every task, so that allocation on threads that
+   * finish before the phase does is not lost.
+   */
+  public static void countWorkerAllocation() {
+    if (!sEnabled) {
+      return;
+    }
+    long now = threadAllocatedBytes();
+    if (now < 0) {
+      return;
+    }
+    long[] seen = sWorkerSeen.get();
+    sWorkerAllocated.addAndGet(now - seen[0]);
+    seen[0] = now;
+  }
+
+  /**
+   * Sets a named count, such as a cache's hits, to be written in the report's counters.
+   */
+  public static void setCounter(String name, long value) {
+    if (!sEnabled) {
+      return;
+    }
+    synchronized (sCounters) {
+      sCounters.put(name, value);
+    }
+  }
+
+  /**
+   * Writes the report to {@code file}. Returns false and prints a message if it can't.
+   */
+  public static boolean write(String file) {
+    long totalNanos = System.nanoTime() - sStartNanos;
+    StringBuilder json = new StringBuilder();
+    json.append("{\n");
+    json.append("  \"totalWallMillis\": ").append(millis(totalNanos)).append(",\n");
+    json.append("  \"pagesWritten\": ").append(pagesWritten()).append(",\n");
+    json.append("  \"bytesWritten\": ").append(ClearPage.bytesWrittenCount()).append(",\n");
+    json.append("  \"phases\": [");
+    synchronized (sPhases) {
+      for (int i = 0; i < sPhases.size(); i++) {
+        Phase phase = sPhases.get(i);
+        json.append(i == 0 ? "\n" : ",\n");
+        json.append("    {\"name\": \"").append(phase.mName).append('"');
+        json.append(", \"wallMillis\": ").append(millis(phase.mWallNanos));
+        json.append(", \"cpuMillis\": ").append(millis(phase.mCpuNanos));
+        json.append(", \"allocatedBytes\": ").append(phase.mAllocated);
+        json.append(", \"pages\": ").append(phase.mPages);
+        json.append(", \"bytes\": ").append(phase.mBytes).append('}');
+      }
+    }
+    json.append("\n  ],\n");
+    json.append("  \"counters\": {");
+    synchronized (sCounters) {
+      int i = 0;
+      for (Map.Entry<String, Long> counter : sCounters.entrySet()) {
+        json.append(i++ == 0 ? "\n" : ",\n");
+        json.append("    \"").append(counter.getKey()).append("\": ").append(counter.getValue());
+      }
+      json.append(i == 0 ? "}\n" : "\n  }\n");
+    }
+    json.append("}\n");
+
+    Writer out = null;
+    try {
+      File f = new File(file);
+      ClearPage.ensureDirectory(f);
+      out = new OutputStreamWriter(new FileOutputStream(f), "UTF-8");
+      out.write(json.toString());
+      return true;
+    } catch (IOException e) {
+      System.err.println("error writing metrics to " + file + ": " + e.getMessage());
+      return false;
+    } finally {
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException e) {}
+      }
+    }
+  }
+
+  private static long millis(long nanos) {
+    return nanos < 0 ? -1 : nanos / 1000000;
+  }
+
+  private static int pagesWritten() {
+    return ClearPage.writtenCount() + ClearPage.unchangedCount();
+  }
+
+  private static long processCpuNanos() {
+    OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    if (os instanceof com.sun.management.OperatingSystemMXBean) {
+      return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+    }
+    return -1;
+  }
+
+  private static long threadAllocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(
+          Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  private static long allocatedBytes() {
+    long thread = threadAllocatedBytes();
+    return thread < 0 ? -1 : thread + sWorkerAllocated.get();
+  }
+
+  /**
+   * A phase being timed. Until {@link #end()} is called the fields hold the values at the start.
+   */
+  public static final class Phase {
+    private final String mName;
+    private long mWallNanos;
+    private long mCpuNanos;
+    private long mAllocated;
+    private int mPages;
+    private long mBytes;
+
+    private Phase(String name) {
+      mName = name;
+    }
+
+    /** Stops timing this phase and adds it to the report. */
+    public void end() {
+      if (mName == null) {
+        return;
+      }
+      mWallNanos = System.nanoTime() - mWallNanos;
+      long cpu = processCpuNanos();
+      mCpuNanos = cpu < 0 || mCpuNanos < 0 ? -1 : cpu - mCpuNanos;
+      long allocated = allocatedBytes();
+      mAllocated = allocated < 0 || mAllocated < 0 ? -1 : allocated - mAllocated;
+      mPages = pagesWritten() - mPages;
+      mBytes = ClearPage.bytesWrittenCount() - mBytes;
+      synchronized (sPhases) {
+        sPhases.add(this);
+      }
+    }
+  }
+}
@@ -0,0 +1,1090 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The converted model saved to a file, so that the site can be rendered again from it without
+ * running javadoc or {@link Converter#makeInfo}. {@code -snapshot FILE} saves one at the end of a
+ * run and {@code -fromsnapshot FILE} renders from it; see {@link Doclava#main}.
+ *
+ * <p>The file has the packages, classes, members, types and annotations with their raw comments
+ * and source positions, the versions {@link SinceTagger} gave them, and the answers javadoc gave
+ * to the names the comments looked up. Comments are parsed again when the file is read. Objects
+ * are numbered in the order they're read back, which is an order where everything an object's
+ * constructor takes already exists; what refers back to later objects is filled in afterwards.
+ * Strings are kept once each and numbers are written in as few bytes as they need.
+ *
+ * <p>Federated sites aren't saved, since they're looked up again from the -federate options.
+ */
+class ModelSnapshot {
+  private static final int MAGIC = 0x44534e50;
+  private static final int VERSION = 1;
+
+  // tags for constant and annotation values
+  private static final int VALUE_NULL = 0;
+  private static final int VALUE_STRING = 1;
+  private static final int VALUE_INTEGER = 2;
+  private static final int VALUE_LONG = 3;
+  private static final int VALUE_FLOAT = 4;
+  private static final int VALUE_DOUBLE = 5;
+  private static final int VALUE_BOOLEAN = 6;
+  private static final int VALUE_CHARACTER = 7;
+  private static final int VALUE_BYTE = 8;
+  private static final int VALUE_SHORT = 9;
+  private static final int VALUE_TYPE = 10;
+  private static final int VALUE_FIELD = 11;
+  private static final int VALUE_ANNOTATION = 12;
+  private static final int VALUE_ARRAY = 13;
+
+  // modifier flags
+  private static final int PUBLIC = 1 << 0;
+  private static final int PROTECTED = 1 << 1;
+  private static final int PACKAGE_PRIVATE = 1 << 2;
+  private static final int PRIVATE = 1 << 3;
+  private static final int STATIC = 1 << 4;
+  private static final int FINAL = 1 << 5;
+  private static final int ABSTRACT = 1 << 6;
+  private static final int SYNTHETIC = 1 << 7;
+  private static final int INTERFACE = 1 << 8;
+  private static final int ORDINARY_CLASS = 1 << 9;
+  private static final int EXCEPTION = 1 << 10;
+  private static final int ERROR = 1 << 11;
+  private static final int ENUM = 1 << 12;
+  private static final int ANNOTATION = 1 << 13;
+  private static final int INCLUDED = 1 << 14;
+  private static final int PRIMITIVE = 1 << 15;
+  private static final int INITIALIZED = 1 << 16;
+  private static final int SYNCHRONIZED = 1 << 17;
+  private static final int NATIVE = 1 << 18;
+  private static final int ANNOTATION_ELEMENT = 1 << 19;
+  private static final int VARARGS = 1 << 20;
+  private static final int TRANSIENT = 1 << 21;
+  private static final int VOLATILE = 1 << 22;
+  private static final int TYPE_VARIABLE = 1 << 23;
+  private static final int WILDCARD = 1 << 24;
+
+  /**
+   * Each class's methods and fields as converted. Writing the stubs adds hidden methods that
+   * implement abstract ones to their classes and sorts both arrays in place, and rendering from
+   * the snapshot writes the stubs again.
+   */
+  private final Map<ClassInfo, MethodInfo[]> mConvertedMethods =
+      new IdentityHashMap<ClassInfo, MethodInfo[]>();
+  private final Map<ClassInfo, FieldInfo[]> mConvertedFields =
+      new IdentityHashMap<ClassInfo, FieldInfo[]>();
+
+  // versions read back from a snapshot, applied by tagSince()
+  private final Map<PackageInfo, String> mPackageSince = new LinkedHashMap<PackageInfo, String>();
+  private final List<ClassSince> mClassSince = new ArrayList<ClassSince>();
+
+  private static class ClassSince {
+    ClassInfo cl;
+    String since;
+    String[] constructors;
+    String[] fields;
+    String[] methods;
+  }
+
+  private ModelSnapshot() {
+  }
+
+  /**
+   * Starts a snapshot of the model as {@link Converter} has just made it, to be written once
+   * it's been rendered.
+   */
+  static ModelSnapshot record() {
+    ModelSnapshot snapshot = new ModelSnapshot();
+    for (ClassInfo cl : Converter.allClasses()) {
+      if (cl.allSelfMethods() != null) {
+        snapshot.mConvertedMethods.put(cl, cl.allSelfMethods().clone());
+      }
+      if (cl.allSelfFields() != null) {
+        snapshot.mConvertedFields.put(cl, cl.allSelfFields().clone());
+      }
+    }
+    return snapshot;
+  }
+
+  private MethodInfo[] convertedMethods(ClassInfo cl) {
+    MethodInfo[] methods = mConvertedMethods.get(cl);
+    return methods != null ? methods : cl.allSelfMethods();
+  }
+
+  private FieldInfo[] convertedFields(ClassInfo cl) {
+    FieldInfo[] fields = mConvertedFields.get(cl);
+    return fields != null ? fields : cl.allSelfFields();
+  }
+
+  /**
+   * Writes the model, with the versions it's been tagged with and the names that have been
+   * looked up in javadoc so far.
+   */
+  void write(File file) throws IOException {
+    DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+    try {
+      new Writer(out).write();
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Reads a snapshot back into {@link Converter} and {@link SymbolIndex}, in place of running
+   * {@link Converter#makeInfo}. Its versions are added to {@link Doclava#sinceTagger}, and
+   * {@link #tagSince} applies them where tagging would.
+   */
+  static ModelSnapshot read(File file, int threads) throws IOException {
+    DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+    Reader reader;
+    try {
+      reader = new Reader(in);
+      reader.read();
+    } finally {
+      in.close();
+    }
+    Converter.useInfo(reader.mAllClasses, reader.mRootClasses, reader.mRootTags, threads);
+    return reader.mSnapshot;
+  }
+
+  /**
+   * Gives the packages, root classes and their members the versions they had when the snapshot
+   * was written.
+   */
+  void tagSince() {
+    for (Map.Entry<PackageInfo, String> e : mPackageSince.entrySet()) {
+      e.getKey().setSince(e.getValue());
+    }
+    for (ClassSince s : mClassSince) {
+      if (s.since != null) {
+        s.cl.setSince(s.since);
+      }
+      tagSince(s.cl.constructors(), s.constructors);
+      tagSince(s.cl.fields(), s.fields);
+      tagSince(s.cl.methods(), s.methods);
+    }
+  }
+
+  private static void tagSince(DocInfo[] docs, String[] since) {
+    int n = Math.min(docs.length, since.length);
+    for (int i = 0; i < n; i++) {
+      if (since[i] != null) {
+        docs[i].setSince(since[i]);
+      }
+    }
+  }
+
+  private static int flag(boolean set, int flag) {
+    return set ? flag : 0;
+  }
+
+  private static boolean isSet(int flags, int flag) {
+    return (flags & flag) != 0;
+  }
+
+  private class Writer {
+    private final DataOutputStream mOut;
+    private final Map<String, Integer> mStrings = new HashMap<String, Integer>();
+
+    private final Ids<PackageInfo> mPackages = new Ids<PackageInfo>();
+    private final Ids<ClassInfo> mClasses = new Ids<ClassInfo>();
+    private final Ids<TypeInfo> mTypes = new Ids<TypeInfo>();
+    private final Ids<AnnotationInstanceInfo> mAnnotations = new Ids<AnnotationInstanceInfo>();
+    private final Ids<FieldInfo> mFields = new Ids<FieldInfo>();
+    private final Ids<MethodInfo> mMethods = new Ids<MethodInfo>();
+    private final Ids<AnnotationValueInfo> mValues = new Ids<AnnotationValueInfo>();
+
+    private final Map<String, ClassInfo> mClassesByName = SymbolIndex.classesByName();
+    private final Map<String, PackageInfo> mPackagesByName = SymbolIndex.packagesByName();
+    private final Map<SymbolIndex.ScopedName, ClassInfo> mClassesNamedIn =
+        SymbolIndex.classesNamedIn();
+    private final Map<SymbolIndex.ScopedName, ClassInfo> mInnerClassesNamedIn =
+        SymbolIndex.innerClassesNamedIn();
+
+    Writer(DataOutputStream out) {
+      mOut = out;
+    }
+
+    void write() throws IOException {
+      ClassInfo[] all;
+      int found;
+      do {
+        found = mClasses.size();
+        all = Converter.allClasses();
+        for (ClassInfo cl : all) {
+          mClasses.add(cl);
+        }
+        addAll(mClasses, Converter.rootClasses());
+        for (Map.Entry<String, ClassInfo> e : mClassesByName.entrySet()) {
+          mClasses.add(e.getValue());
+        }
+        for (Map.Entry<String, PackageInfo> e : mPackagesByName.entrySet()) {
+          mPackages.add(e.getValue());
+        }
+        addScoped(mClassesNamedIn);
+        addScoped(mInnerClassesNamedIn);
+        find();
+      } while (mClasses.size() != found);
+      orderMethods();
+
+      mOut.writeInt(MAGIC);
+      mOut.writeInt(VERSION);
+      writeNumber(mPackages.size());
+      writeNumber(mClasses.size());
+      writeNumber(mTypes.size());
+      writeNumber(mAnnotations.size());
+      writeNumber(mFields.size());
+      writeNumber(mMethods.size());
+      writeNumber(mValues.size());
+
+      for (PackageInfo pkg : mPackages.list) {
+        writeString(pkg.name());
+        writeString(pkg.getRawCommentText());
+        writePosition(pkg.position());
+      }
+      for (ClassInfo cl : mClasses.list) {
+        writeNumber(flag(cl.isPublic(), PUBLIC) | flag(cl.isProtected(), PROTECTED)
+            | flag(cl.isPackagePrivate(), PACKAGE_PRIVATE) | flag(cl.isPrivate(), PRIVATE)
+            | flag(cl.isStatic(), STATIC) | flag(cl.isInterface(), INTERFACE)
+            | flag(cl.isAbstract(), ABSTRACT) | flag(cl.isOrdinaryClass(), ORDINARY_CLASS)
+            | flag(cl.isException(), EXCEPTION) | flag(cl.isError(), ERROR)
+            | flag(cl.isEnum(), ENUM) | flag(cl.isAnnotation(), ANNOTATION)
+            | flag(cl.isFinal(), FINAL) | flag(cl.isDefinedLocally(), INCLUDED)
+            | flag(cl.isPrimitive(), PRIMITIVE) | flag(cl.asTypeInfo() != null, INITIALIZED));
+        writeString(cl.getRawCommentText());
+        writePosition(cl.position());
+        writeString(cl.name());
+        writeString(cl.qualifiedName());
+        writeString(cl.qualifiedTypeName());
+      }
+      for (TypeInfo t : mTypes.list) {
+        writeNumber(flag(t.isPrimitive(), PRIMITIVE) | flag(t.isTypeVariable(), TYPE_VARIABLE)
+            | flag(t.isWildcard(), WILDCARD));
+        writeString(t.dimension());
+        writeString(t.simpleTypeName());
+        writeString(t.qualifiedTypeName());
+        writeNumber(mClasses.id(t.asClassInfo()));
+      }
+      for (AnnotationInstanceInfo a : mAnnotations.list) {
+        writeNumber(mClasses.id(a.type()));
+        writeNumber(a.elementValues().length);
+      }
+      for (FieldInfo f : mFields.list) {
+        writeString(f.name());
+        writeNumber(mClasses.id(f.containingClass()));
+        writeNumber(mClasses.id(f.realContainingClass()));
+        writeNumber(flag(f.isPublic(), PUBLIC) | flag(f.isProtected(), PROTECTED)
+            | flag(f.isPackagePrivate(), PACKAGE_PRIVATE) | flag(f.isPrivate(), PRIVATE)
+            | flag(f.isFinal(), FINAL) | flag(f.isStatic(), STATIC)
+            | flag(f.isTransient(), TRANSIENT) | flag(f.isVolatile(), VOLATILE)
+            | flag(f.isSynthetic(), SYNTHETIC));
+        writeNumber(mTypes.id(f.type()));
+        writeString(f.getRawCommentText());
+        writeValue(f.constantValue());
+        writePosition(f.position());
+        writeIds(mAnnotations, f.annotations());
+      }
+      for (MethodInfo m : mMethods.list) {
+        writeString(m.getRawCommentText());
+        writeIds(mTypes, m.getTypeParameters());
+        writeString(m.name());
+        writeString(m.signature());
+        writeNumber(mClasses.id(m.containingClass()));
+        writeNumber(mClasses.id(m.realContainingClass()));
+        writeNumber(flag(m.isPublic(), PUBLIC) | flag(m.isProtected(), PROTECTED)
+            | flag(m.isPackagePrivate(), PACKAGE_PRIVATE) | flag(m.isPrivate(), PRIVATE)
+            | flag(m.isFinal(), FINAL) | flag(m.isStatic(), STATIC)
+            | flag(m.isSynthetic(), SYNTHETIC) | flag(m.isAbstract(), ABSTRACT)
+            | flag(m.isSynchronized(), SYNCHRONIZED) | flag(m.isNative(), NATIVE)
+            | flag(m.isAnnotationElement(), ANNOTATION_ELEMENT)
+            | flag(m.isVarArgs(), VARARGS));
+        writeString(m.kind());
+        writeString(m.flatSignature());
+        writeNumber(mMethods.id(m.overriddenMethod()));
+        writeNumber(mTypes.id(m.returnType()));
+        ParameterInfo[] params = m.parameters();
+        writeNumber(params.length);
+        for (ParameterInfo p : params) {
+          writeString(p.name());
+          writeString(p.typeName());
+          writeNumber(mTypes.id(p.type()));
+          writeNumber(p.isVarArg() ? 1 : 0);
+          writePosition(p.position());
+        }
+        writeIds(mClasses, m.thrownExceptions());
+        writePosition(m.position());
+        writeIds(mAnnotations, m.annotations());
+      }
+      for (AnnotationValueInfo v : mValues.list) {
+        writeNumber(mMethods.id(v.element()));
+      }
+
+      // what refers to objects read back after the referring one
+      for (AnnotationInstanceInfo a : mAnnotations.list) {
+        for (AnnotationValueInfo v : a.elementValues()) {
+          writeNumber(mValues.id(v));
+        }
+      }
+      for (AnnotationValueInfo v : mValues.list) {
+        writeValue(v.value());
+      }
+      for (MethodInfo m : mMethods.list) {
+        writeNumber(mValues.id(m.defaultAnnotationElementValue()));
+      }
+      for (TypeInfo t : mTypes.list) {
+        writeIds(mTypes, t.typeArguments());
+        writeIds(mTypes, t.superBounds());
+        writeIds(mTypes, t.extendsBounds());
+      }
+      for (ClassInfo cl : mClasses.list) {
+        if (cl.asTypeInfo() == null) {
+          continue;
+        }
+        writeNumber(mTypes.id(cl.asTypeInfo()));
+        writeIds(mClasses, cl.realInterfaces());
+        writeIds(mTypes, cl.realInterfaceTypes());
+        writeIds(mClasses, cl.innerClasses());
+        writeIds(mMethods, cl.allConstructors());
+        writeIds(mMethods, convertedMethods(cl));
+        writeIds(mMethods, cl.annotationElements());
+        writeIds(mFields, convertedFields(cl));
+        writeIds(mFields, cl.enumConstants());
+        writeNumber(mPackages.id(cl.containingPackage()));
+        writeNumber(mClasses.id(cl.containingClass()));
+        writeNumber(mClasses.id(cl.realSuperclass()));
+        writeNumber(mTypes.id(cl.superclassType()));
+        writeIds(mAnnotations, cl.annotations());
+        writeIds(mMethods, cl.getHiddenMethods());
+        writeIds(mMethods, cl.getNonWrittenConstructors());
+        writeIds(mTypes, cl.getTypeParameters());
+        writeIds(mClasses, cl.getRealInnerClasses());
+      }
+      for (PackageInfo pkg : mPackages.list) {
+        if (!pkg.hasClassLists()) {
+          writeNumber(0);
+          continue;
+        }
+        writeNumber(1);
+        writeIds(mClasses, pkg.getAnnotations());
+        writeIds(mClasses, pkg.getInterfaces());
+        writeIds(mClasses, pkg.ordinaryClasses());
+        writeIds(mClasses, pkg.enums());
+        writeIds(mClasses, pkg.exceptions());
+        writeIds(mClasses, pkg.errors());
+      }
+
+      // the root
+      writeIds(mClasses, all);
+      writeIds(mClasses, Converter.rootClasses());
+      TagInfo[] rootTags = Converter.unconvertedRootTags();
+      writeNumber(rootTags.length);
+      for (TagInfo t : rootTags) {
+        writeNumber(t instanceof SeeTagInfo ? 1 : 0);
+        writeString(t.name());
+        writeString(t.kind());
+        writeString(t.text());
+        writePosition(t.position());
+      }
+
+      // versions
+      Map<String, String> versions = Doclava.sinceTagger.versions();
+      writeNumber(versions.size());
+      for (Map.Entry<String, String> e : versions.entrySet()) {
+        writeString(e.getKey());
+        writeString(e.getValue());
+      }
+      for (PackageInfo pkg : mPackages.list) {
+        writeString(pkg.getSince());
+      }
+      // without versions the members were never tagged, and aren't asked for here either
+      ClassInfo[] rootClasses = versions.isEmpty() ? new ClassInfo[0] : Converter.rootClasses();
+      writeIds(mClasses, rootClasses);
+      for (ClassInfo cl : rootClasses) {
+        writeString(cl.getSince());
+        writeSince(cl.constructors());
+        writeSince(cl.fields());
+        writeSince(cl.methods());
+      }
+
+      // what javadoc answered
+      writeNumber(mClassesByName.size());
+      for (Map.Entry<String, ClassInfo> e : mClassesByName.entrySet()) {
+        writeString(e.getKey());
+        writeNumber(mClasses.id(e.getValue()));
+      }
+      writeNumber(mPackagesByName.size());
+      for (Map.Entry<String, PackageInfo> e : mPackagesByName.entrySet()) {
+        writeString(e.getKey());
+        writeNumber(mPackages.id(e.getValue()));
+      }
+      writeScoped(mClassesNamedIn);
+      writeScoped(mInnerClassesNamedIn);
+    }
+
+    /**
+     * Numbers everything that can be reached from the objects numbered so far.
+     */
+    private void find() {
+      int packages = 0, classes = 0, types = 0, annotations = 0, fields = 0, methods = 0;
+      int values = 0;
+      boolean more = true;
+      while (more) {
+        more = false;
+        for (; packages < mPackages.size(); packages++, more = true) {
+          PackageInfo pkg = mPackages.list.get(packages);
+          if (pkg.hasClassLists()) {
+            // work out the ones that haven't been asked for yet, so they're all saved
+            addAll(mClasses, pkg.getAnnotations());
+            addAll(mClasses, pkg.getInterfaces());
+            addAll(mClasses, pkg.ordinaryClasses());
+            addAll(mClasses, pkg.enums());
+            addAll(mClasses, pkg.exceptions());
+            addAll(mClasses, pkg.errors());
+          }
+        }
+        for (; classes < mClasses.size(); classes++, more = true) {
+          ClassInfo cl = mClasses.list.get(classes);
+          if (cl.asTypeInfo() == null) {
+            continue;
+          }
+          mTypes.add(cl.asTypeInfo());
+          addAll(mClasses, cl.realInterfaces());
+          addAll(mTypes, cl.realInterfaceTypes());
+          addAll(mClasses, cl.innerClasses());
+          addAll(mMethods, cl.allConstructors());
+          addAll(mMethods, convertedMethods(cl));
+          addAll(mMethods, cl.annotationElements());
+          addAll(mFields, convertedFields(cl));
+          addAll(mFields, cl.enumConstants());
+          mPackages.add(cl.containingPackage());
+          mClasses.add(cl.containingClass());
+          mClasses.add(cl.realSuperclass());
+          mTypes.add(cl.superclassType());
+          addAll(mAnnotations, cl.annotations());
+          addAll(mMethods, cl.getHiddenMethods());
+          addAll(mMethods, cl.getNonWrittenConstructors());
+          addAll(mTypes, cl.getTypeParameters());
+          addAll(mClasses, cl.getRealInnerClasses());
+        }
+        for (; types < mTypes.size(); types++, more = true) {
+          TypeInfo t = mTypes.list.get(types);
+          mClasses.add(t.asClassInfo());
+          addAll(mTypes, t.typeArguments());
+          addAll(mTypes, t.superBounds());
+          addAll(mTypes, t.extendsBounds());
+        }
+        for (; annotations < mAnnotations.size(); annotations++, more = true) {
+          AnnotationInstanceInfo a = mAnnotations.list.get(annotations);
+          mClasses.add(a.type());
+          addAll(mValues, a.elementValues());
+        }
+        for (; fields < mFields.size(); fields++, more = true) {
+          FieldInfo f = mFields.list.get(fields);
+          mClasses.add(f.containingClass());
+          mClasses.add(f.realContainingClass());
+          mTypes.add(f.type());
+          addAll(mAnnotations, f.annotations());
+        }
+        for (; methods < mMethods.size(); methods++, more = true) {
+          MethodInfo m = mMethods.list.get(methods);
+          mClasses.add(m.containingClass());
+          mClasses.add(m.realContainingClass());
+          addAll(mTypes, m.getTypeParameters());
+          mMethods.add(m.overriddenMethod());
+          mTypes.add(m.returnType());
+          for (ParameterInfo p : m.parameters()) {
+            mTypes.add(p.type());
+          }
+          addAll(mClasses, m.thrownExceptions());
+          addAll(mAnnotations, m.annotations());
+          mValues.add(m.defaultAnnotationElementValue());
+        }
+        for (; values < mValues.size(); values++, more = true) {
+          AnnotationValueInfo v = mValues.list.get(values);
+          mMethods.add(v.element());
+          Object value = v.value();
+          if (value instanceof TypeInfo) {
+            mTypes.add((TypeInfo) value);
+          } else if (value instanceof FieldInfo) {
+            mFields.add((FieldInfo) value);
+          } else if (value instanceof AnnotationInstanceInfo) {
+            mAnnotations.add((AnnotationInstanceInfo) value);
+          } else if (value instanceof AnnotationValueInfo[]) {
+            addAll(mValues, (AnnotationValueInfo[]) value);
+          }
+        }
+      }
+    }
+
+    private void addScoped(Map<SymbolIndex.ScopedName, ClassInfo> names) {
+      for (Map.Entry<SymbolIndex.ScopedName, ClassInfo> e : names.entrySet()) {
+        mClasses.add(e.getKey().scope());
+        mClasses.add(e.getValue());
+      }
+    }
+
+    /**
+     * Puts each method after the one it overrides, since that's passed to its constructor.
+     */
+    private void orderMethods() {
+      List<MethodInfo> ordered = new ArrayList<MethodInfo>(mMethods.size());
+      IdentityHashMap<MethodInfo, Boolean> done = new IdentityHashMap<MethodInfo, Boolean>();
+      List<MethodInfo> chain = new ArrayList<MethodInfo>();
+      for (MethodInfo m : mMethods.list) {
+        for (MethodInfo o = m; o != null && !done.containsKey(o); o = o.overriddenMethod()) {
+          done.put(o, true);
+          chain.add(o);
+        }
+        for (int i = chain.size() - 1; i >= 0; i--) {
+          ordered.add(chain.get(i));
+        }
+        chain.clear();
+      }
+      mMethods.renumber(ordered);
+    }
+
+    private void writeSince(DocInfo[] docs) throws IOException {
+      writeNumber(docs.length);
+      for (DocInfo doc : docs) {
+        writeString(doc.getSince());
+      }
+    }
+
+    private void writeScoped(Map<SymbolIndex.ScopedName, ClassInfo> names) throws IOException {
+      writeNumber(names.size());
+      for (Map.Entry<SymbolIndex.ScopedName, ClassInfo> e : names.entrySet()) {
+        writeNumber(mClasses.id(e.getKey().scope()));
+        writeString(e.getKey().name());
+        writeNumber(mClasses.id(e.getValue()));
+      }
+    }
+
+    private void writeValue(Object value) throws IOException {
+      if (value == null) {
+        writeNumber(VALUE_NULL);
+      } else if (value instanceof String) {
+        writeNumber(VALUE_STRING);
+        writeString((String) value);
+      } else if (value instanceof Integer) {
+        writeNumber(VALUE_INTEGER);
+        writeNumber((Integer) value);
+      } else if (value instanceof Long) {
+        writeNumber(VALUE_LONG);
+        mOut.writeLong((Long) value);
+      } else if (value instanceof Float) {
+        writeNumber(VALUE_FLOAT);
+        mOut.writeFloat((Float) value);
+      } else if (value instanceof Double) {
+        writeNumber(VALUE_DOUBLE);
+        mOut.writeDouble((Double) value);
+      } else if (value instanceof Boolean) {
+        writeNumber(VALUE_BOOLEAN);
+        writeNumber((Boolean) value ? 1 : 0);
+      } else if (value instanceof Character) {
+        writeNumber(VALUE_CHARACTER);
+        writeNumber((Character) value);
+      } else if (value instanceof Byte) {
+        writeNumber(VALUE_BYTE);
+        writeNumber((Byte) value);
+      } else if (value instanceof Short) {
+        writeNumber(VALUE_SHORT);
+        writeNumber((Short) value);
+      } else if (value instanceof TypeInfo) {
+        writeNumber(VALUE_TYPE);
+        writeNumber(mTypes.id((TypeInfo) value));
+      } else if (value instanceof FieldInfo) {
+        writeNumber(VALUE_FIELD);
+        writeNumber(mFields.id((FieldInfo) value));
+      } else if (value instanceof AnnotationInstanceInfo) {
+        writeNumber(VALUE_ANNOTATION);
+        writeNumber(mAnnotations.id((AnnotationInstanceInfo) value));
+      } else if (value instanceof AnnotationValueInfo[]) {
+        writeNumber(VALUE_ARRAY);
+        writeIds(mValues, (AnnotationValueInfo[]) value);
+      } else {
+        throw new IOException("can't save a value of " + value.getClass());
+      }
+    }
+
+    private <T> void writeIds(Ids<T> ids, T[] objects) throws IOException {
+      if (objects == null) {
+        writeNumber(0);
+        return;
+      }
+      writeNumber(objects.length + 1);
+      for (T o : objects) {
+        writeNumber(ids.id(o));
+      }
+    }
+
+    private void writePosition(SourcePositionInfo pos) throws IOException {
+      if (pos == null) {
+        writeString(null);
+        return;
+      }
+      writeString(pos.file);
+      writeNumber(pos.line);
+      writeNumber(pos.column);
+    }
+
+    /**
+     * Writes 0 for null, 1 and the characters for a string that's new, or 2 more than the index
+     * of one that's been written already.
+     */
+    private void writeString(String s) throws IOException {
+      if (s == null) {
+        writeNumber(0);
+        return;
+      }
+      Integer index = mStrings.get(s);
+      if (index != null) {
+        writeNumber(index + 2);
+        return;
+      }
+      mStrings.put(s, mStrings.size());
+      writeNumber(1);
+      writeNumber(s.length());
+      for (int i = 0; i < s.length(); i++) {
+        writeNumber(s.charAt(i));
+      }
+    }
+
+    /**
+     * Writes {@code n} seven bits to a byte, with small negative numbers kept small by
+     * interleaving them with the positive ones.
+     */
+    private void writeNumber(int n) throws IOException {
+      int v = (n << 1) ^ (n >> 31);
+      while ((v & ~0x7f) != 0) {
+        mOut.writeByte((v & 0x7f) | 0x80);
+        v >>>= 7;
+      }
+      mOut.writeByte(v);
+    }
+  }
+
+  /**
+   * Objects of one kind numbered from 1 in the order they were found, with 0 for null.
+   */
+  private static class Ids<T> {
+    final List<T> list = new ArrayList<T>();
+    private final IdentityHashMap<T, Integer> mIds = new IdentityHashMap<T, Integer>();
+
+    void add(T o) {
+      if (o != null && !mIds.containsKey(o)) {
+        mIds.put(o, list.size() + 1);
+        list.add(o);
+      }
+    }
+
+    int id(T o) {
+      if (o == null) {
+        return 0;
+      }
+      Integer id = mIds.get(o);
+      if (id == null) {
+        throw new IllegalStateException("not in the snapshot: " + o);
+      }
+      return id;
+    }
+
+    int size() {
+      return list.size();
+    }
+
+    void renumber(List<T> ordered) {
+      list.clear();
+      mIds.clear();
+      for (T o : ordered) {
+        add(o);
+      }
+    }
+  }
+
+  private static <T> void addAll(Ids<T> ids, T[] objects) {
+    if (objects != null) {
+      for (T o : objects) {
+        ids.add(o);
+      }
+    }
+  }
+
+  private static class Reader {
+    private final DataInputStream mIn;
+    private final List<String> mStrings = new ArrayList<String>();
+    final ModelSnapshot mSnapshot;
+
+    private PackageInfo[] mPackages;
+    private ClassInfo[] mClasses;
+    private TypeInfo[] mTypes;
+    private AnnotationInstanceInfo[] mAnnotations;
+    private AnnotationValueInfo[][] mAnnotationValues;
+    private FieldInfo[] mFields;
+    private MethodInfo[] mMethods;
+    private AnnotationValueInfo[] mValues;
+
+    ClassInfo[] mAllClasses;
+    ClassInfo[] mRootClasses;
+    TagInfo[] mRootTags;
+
+    Reader(DataInputStream in) {
+      mIn = in;
+      mSnapshot = new ModelSnapshot();
+    }
+
+    void read() throws IOException {
+      if (mIn.readInt() != MAGIC) {
+        throw new IOException("not a doclava model snapshot");
+      }
+      int version = mIn.readInt();
+      if (version != VERSION) {
+        throw new IOException("snapshot is version " + version + ", expected " + VERSION);
+      }
+      mPackages = new PackageInfo[readNumber() + 1];
+      mClasses = new ClassInfo[readNumber() + 1];
+      mTypes = new TypeInfo[readNumber() + 1];
+      mAnnotations = new AnnotationInstanceInfo[readNumber() + 1];
+      mAnnotationValues = new AnnotationValueInfo[mAnnotations.length][];
+      mFields = new FieldInfo[readNumber() + 1];
+      mMethods = new MethodInfo[readNumber() + 1];
+      mValues = new AnnotationValueInfo[readNumber() + 1];
+
+      for (int i = 1; i < mPackages.length; i++) {
+        mPackages[i] = new PackageInfo(readString(), readString(), readPosition());
+      }
+      int[] classFlags = new int[mClasses.length];
+      for (int i = 1; i < mClasses.length; i++) {
+        int f = readNumber();
+        classFlags[i] = f;
+        mClasses[i] = new ClassInfo(null, readString(), readPosition(), isSet(f, PUBLIC),
+            isSet(f, PROTECTED), isSet(f, PACKAGE_PRIVATE), isSet(f, PRIVATE), isSet(f, STATIC),
+            isSet(f, INTERFACE), isSet(f, ABSTRACT), isSet(f, ORDINARY_CLASS),
+            isSet(f, EXCEPTION), isSet(f, ERROR), isSet(f, ENUM), isSet(f, ANNOTATION),
+            isSet(f, FINAL), isSet(f, INCLUDED), readString(), readString(), readString(),
+            isSet(f, PRIMITIVE));
+      }
+      for (int i = 1; i < mTypes.length; i++) {
+        int f = readNumber();
+        mTypes[i] = new TypeInfo(isSet(f, PRIMITIVE), readString(), readString(), readString(),
+            mClasses[readNumber()]);
+        mTypes[i].setIsTypeVariable(isSet(f, TYPE_VARIABLE));
+        mTypes[i].setIsWildcard(isSet(f, WILDCARD));
+      }
+      for (int i = 1; i < mAnnotations.length; i++) {
+        ClassInfo type = mClasses[readNumber()];
+        mAnnotationValues[i] = new AnnotationValueInfo[readNumber()];
+        mAnnotations[i] = new AnnotationInstanceInfo(type, mAnnotationValues[i]);
+      }
+      for (int i = 1; i < mFields.length; i++) {
+        String name = readString();
+        ClassInfo containingClass = mClasses[readNumber()];
+        ClassInfo realContainingClass = mClasses[readNumber()];
+        int f = readNumber();
+        mFields[i] = new FieldInfo(name, containingClass, realContainingClass, isSet(f, PUBLIC),
+            isSet(f, PROTECTED), isSet(f, PACKAGE_PRIVATE), isSet(f, PRIVATE), isSet(f, FINAL),
+            isSet(f, STATIC), isSet(f, TRANSIENT), isSet(f, VOLATILE), isSet(f, SYNTHETIC),
+            mTypes[readNumber()], readString(), readValue(), readPosition(),
+            readAnnotations());
+      }
+      for (int i = 1; i < mMethods.length; i++) {
+        String rawCommentText = readString();
+        TypeInfo[] typeParameters = readTypes();
+        String name = readString();
+        String signature = readString();
+        ClassInfo containingClass = mClasses[readNumber()];
+        ClassInfo realContainingClass = mClasses[readNumber()];
+        int f = readNumber();
+        String kind = readString();
+        String flatSignature = readString();
+        MethodInfo overriddenMethod = mMethods[readNumber()];
+        TypeInfo returnType = mTypes[readNumber()];
+        ParameterInfo[] params = new ParameterInfo[readNumber()];
+        for (int j = 0; j < params.length; j++) {
+          params[j] = new ParameterInfo(readString(), readString(), mTypes[readNumber()],
+              readNumber() != 0, readPosition());
+        }
+        mMethods[i] = new MethodInfo(rawCommentText, typeParameters, name, signature,
+            containingClass, realContainingClass, isSet(f, PUBLIC), isSet(f, PROTECTED),
+            isSet(f, PACKAGE_PRIVATE), isSet(f, PRIVATE), isSet(f, FINAL), isSet(f, STATIC),
+            isSet(f, SYNTHETIC), isSet(f, ABSTRACT), isSet(f, SYNCHRONIZED), isSet(f, NATIVE),
+            isSet(f, ANNOTATION_ELEMENT), kind, flatSignature, overriddenMethod, returnType,
+            params, readClasses(), readPosition(), readAnnotations());
+        mMethods[i].setVarargs(isSet(f, VARARGS));
+      }
+      for (int i = 1; i < mValues.length; i++) {
+        mValues[i] = new AnnotationValueInfo(mMethods[readNumber()]);
+      }
+
+      for (int i = 1; i < mAnnotations.length; i++) {
+        AnnotationValueInfo[] values = mAnnotationValues[i];
+        for (int j = 0; j < values.length; j++) {
+          values[j] = mValues[readNumber()];
+        }
+      }
+      for (int i = 1; i < mValues.length; i++) {
+        mValues[i].init(readValue());
+      }
+      for (int i = 1; i < mMethods.length; i++) {
+        mMethods[i].init(mValues[readNumber()]);
+      }
+      for (int i = 1; i < mTypes.length; i++) {
+        TypeInfo t = mTypes[i];
+        t.setTypeArguments(readTypes());
+        t.setBounds(readTypes(), readTypes());
+      }
+      for (int i = 1; i < mClasses.length; i++) {
+        if (!isSet(classFlags[i], INITIALIZED)) {
+          continue;
+        }
+        ClassInfo cl = mClasses[i];
+        cl.init(mTypes[readNumber()], readClasses(), readTypes(), readClasses(), readMethods(),
+            readMethods(), readMethods(), readFields(), readFields(), mPackages[readNumber()],
+            mClasses[readNumber()], mClasses[readNumber()], mTypes[readNumber()],
+            readAnnotations());
+        cl.setHiddenMethods(readMethods());
+        cl.setNonWrittenConstructors(readMethods());
+        cl.init3(readTypes(), readClasses());
+      }
+      ClassInfo[] none = new ClassInfo[0];
+      for (int i = 1; i < mPackages.length; i++) {
+        if (readNumber() == 0) {
+          // never asked for, and there's no javadoc to ask now
+          mPackages[i].setClassLists(none, none, none, none, none, none);
+        } else {
+          mPackages[i].setClassLists(readClasses(), readClasses(), readClasses(), readClasses(),
+              readClasses(), readClasses());
+        }
+      }
+
+      mAllClasses = readClasses();
+      mRootClasses = readClasses();
+      mRootTags = new TagInfo[readNumber()];
+      for (int i = 0; i < mRootTags.length; i++) {
+        boolean see = readNumber() != 0;
+        String name = readString();
+        String kind = readString();
+        String text = readString();
+        SourcePositionInfo pos = readPosition();
+        mRootTags[i] = see ? new SeeTagInfo(name, kind, text, null, pos)
+            : new TagInfo(name, kind, text, pos);
+      }
+
+      int versions = readNumber();
+      for (int i = 0; i < versions; i++) {
+        Doclava.sinceTagger.addVersion(readString(), readString());
+      }
+      for (int i = 1; i < mPackages.length; i++) {
+        String since = readString();
+        if (since != null) {
+          mSnapshot.mPackageSince.put(mPackages[i], since);
+        }
+      }
+      for (ClassInfo cl : readClasses()) {
+        ClassSince s = new ClassSince();
+        s.cl = cl;
+        s.since = readString();
+        s.constructors = readSince();
+        s.fields = readSince();
+        s.methods = readSince();
+        mSnapshot.mClassSince.add(s);
+      }
+
+      SymbolIndex.build(null, mAllClasses);
+      Map<String, ClassInfo> classesByName = new HashMap<String, ClassInfo>();
+      for (int i = readNumber(); i > 0; i--) {
+        classesByName.put(readString(), mClasses[readNumber()]);
+      }
+      Map<String, PackageInfo> packagesByName = new HashMap<String, PackageInfo>();
+      for (int i = readNumber(); i > 0; i--) {
+        packagesByName.put(readString(), mPackages[readNumber()]);
+      }
+      SymbolIndex.restore(classesByName, packagesByName, readScoped(), readScoped());
+    }
+
+    private String[] readSince() throws IOException {
+      String[] since = new String[readNumber()];
+      for (int i = 0; i < since.length; i++) {
+        since[i] = readString();
+      }
+      return since;
+    }
+
+    private Map<SymbolIndex.ScopedName, ClassInfo> readScoped() throws IOException {
+      Map<SymbolIndex.ScopedName, ClassInfo> names =
+          new HashMap<SymbolIndex.ScopedName, ClassInfo>();
+      for (int i = readNumber(); i > 0; i--) {
+        ClassInfo scope = mClasses[readNumber()];
+        String name = readString();
+        names.put(new SymbolIndex.ScopedName(scope, name), mClasses[readNumber()]);
+      }
+      return names;
+    }
+
+    private Object readValue() throws IOException {
+      int tag = readNumber();
+      switch (tag) {
+        case VALUE_NULL:
+          return null;
+        case VALUE_STRING:
+          return readString();
+        case VALUE_INTEGER:
+          return readNumber();
+        case VALUE_LONG:
+          return mIn.readLong();
+        case VALUE_FLOAT:
+          return mIn.readFloat();
+        case VALUE_DOUBLE:
+          return mIn.readDouble();
+        case VALUE_BOOLEAN:
+          return readNumber() != 0;
+        case VALUE_CHARACTER:
+          return (char) readNumber();
+        case VALUE_BYTE:
+          return (byte) readNumber();
+        case VALUE_SHORT:
+          return (short) readNumber();
+        case VALUE_TYPE:
+          return mTypes[readNumber()];
+        case VALUE_FIELD:
+          return mFields[readNumber()];
+        case VALUE_ANNOTATION:
+          return mAnnotations[readNumber()];
+        case VALUE_ARRAY: {
+          AnnotationValueInfo[] values = new AnnotationValueInfo[readNumber() - 1];
+          for (int i = 0; i < values.length; i++) {
+            values[i] = mValues[readNumber()];
+          }
+          return values;
+        }
+        default:
+          throw new IOException("unknown value tag " + tag);
+      }
+    }
+
+    private ClassInfo[] readClasses() throws IOException {
+      int n = readNumber();
+      if (n == 0) {
+        return null;
+      }
+      ClassInfo[] result = new ClassInfo[n - 1];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = mClasses[readNumber()];
+      }
+      return result;
+    }
+
+    private TypeInfo[] readTypes() throws IOException {
+      int n = readNumber();
+      if (n == 0) {
+        return null;
+      }
+      TypeInfo[] result = new TypeInfo[n - 1];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = mTypes[readNumber()];
+      }
+      return result;
+    }
+
+    private MethodInfo[] readMethods() throws IOException {
+      int n = readNumber();
+      if (n == 0) {
+        return null;
+      }
+      MethodInfo[] result = new MethodInfo[n - 1];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = mMethods[readNumber()];
+      }
+      return result;
+    }
+
+    private FieldInfo[] readFields() throws IOException {
+      int n = readNumber();
+      if (n == 0) {
+        return null;
+      }
+      FieldInfo[] result = new FieldInfo[n - 1];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = mFields[readNumber()];
+      }
+      return result;
+    }
+
+    private AnnotationInstanceInfo[] readAnnotations() throws IOException {
+      int n = readNumber();
+      if (n == 0) {
+        return null;
+      }
+      AnnotationInstanceInfo[] result = new AnnotationInstanceInfo[n - 1];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = mAnnotations[readNumber()];
+      }
+      return result;
+    }
+
+    private SourcePositionInfo readPosition() throws IOException {
+      String file = readString();
+      if (file == null) {
+        return null;
+      }
+      return new SourcePositionInfo(file, readNumber(), readNumber());
+    }
+
+    private String readString() throws IOException {
+      int n = readNumber();
+      if (n == 0) {
+        return null;
+      } else if (n > 1) {
+        return mStrings.get(n - 2);
+      }
+      char[] chars = new char[readNumber()];
+      for (int i = 0; i < chars.length; i++) {
+        chars[i] = (char) readNumber();
+      }
+      String s = new String(chars);
+      mStrings.add(s);
+      return s;
+    }
+
+    private int readNumber() throws IOException {
+      int v = 0;
+      int shift = 0;
+      int b;
+      do {
+        b = mIn.readUnsignedByte();
+        v |= (b & 0x7f) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      return (v >>> 1) ^ -(v & 1);
+    }
+  }
+}
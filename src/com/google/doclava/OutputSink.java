@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Where the generated documentation goes. Pages, copied files and extracted resources are all
+ * written through the sink in {@link ClearPage#sink}, which may put them in files or somewhere
+ * else entirely.
+ */
+public interface OutputSink {
+  /**
+   * Returns a stream that replaces the content of {@code file}. Closing the stream completes the
+   * file. Streams for different files may be open at the same time on different threads.
+   */
+  OutputStream open(File file) throws IOException;
+
+  /**
+   * Replaces the content of {@code to} with that of the file {@code from}.
+   */
+  void copy(File from, File to) throws IOException;
+
+  /**
+   * Returns true if {@code file} already holds {@code size} bytes with the given CRC-32, so that
+   * writing the same content again can be skipped.
+   */
+  boolean hasContent(File file, long size, long crc) throws IOException;
+
+  /**
+   * Finishes the output. Nothing may be opened afterwards.
+   */
+  void close() throws IOException;
+}
@@ -46,6 +46,15 @@ public class PackageInfo extends DocInfo implements ContainerInfo {
     mName = name;
   }
 
+  /**
+   * Constructs a package read back from a {@link ModelSnapshot}, whose class lists are set with
+   * {@link #setClassLists} rather than asked of javadoc.
+   */
+  PackageInfo(String name, String rawCommentText, SourcePositionInfo position) {
+    super(rawCommentText, position);
+    mName = name;
+  }
+
   public PackageInfo(String name, SourcePositionInfo position) {
     super("", position);
     
@@ -193,6 +202,41 @@ public class PackageInfo extends DocInfo implements ContainerInfo {
     return mErrors;
   }
 
+  /**
+   * Works out the class lists, which are asked of javadoc, and lets go of the javadoc package;
+   * see {@link Converter#releaseJavadoc}.
+   */
+  void releaseJavadoc() {
+    if (mPackage == null) {
+      return;
+    }
+    getAnnotations();
+    getInterfaces();
+    ordinaryClasses();
+    enums();
+    exceptions();
+    errors();
+    mPackage = null;
+  }
+
+  /**
+   * Returns whether any of the class lists has been worked out yet.
+   */
+  boolean hasClassLists() {
+    return mAnnotations != null || mInterfaces != null || mOrdinaryClasses != null
+        || mEnums != null || mExceptions != null || mErrors != null;
+  }
+
+  void setClassLists(ClassInfo[] annotations, ClassInfo[] interfaces, ClassInfo[] ordinaryClasses,
+      ClassInfo[] enums, ClassInfo[] exceptions, ClassInfo[] errors) {
+    mAnnotations = annotations;
+    mInterfaces = interfaces;
+    mOrdinaryClasses = ordinaryClasses;
+    mEnums = enums;
+    mExceptions = exceptions;
+    mErrors = errors;
+  }
+
   // in hashed containers, treat the name as the key
   @Override
   public int hashCode() {
@@ -57,7 +57,7 @@ public class SampleTagInfo extends TagInfo {
   private String mIncluded;
 
   public static String escapeHtml(String str) {
-    return str.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    return HtmlEscaper.HTML.escape(str);
   }
 
   private static boolean isIncludeLine(String str) {
@@ -166,8 +166,7 @@ public class SampleTagInfo extends TagInfo {
                     for (int i = 0; i < trailing; i++) {
                       result.append('\n');
                     }
-                    line = escapeHtml(line);
-                    result.append(line);
+                    HtmlEscaper.HTML.escape(line, result);
                     trailing = 1; // add \n next time, maybe
                   } else {
                     trailing++;
@@ -221,9 +220,10 @@ public class SampleTagInfo extends TagInfo {
               }
             }
             if (escape) {
-              line = escapeHtml(line);
+              HtmlEscaper.HTML.escape(line, result);
+            } else {
+              result.append(line);
             }
-            result.append(line);
             trailing = 1; // add \n next time, maybe
             started = true;
           } else {
@@ -29,13 +29,20 @@ public class SeeTagInfo extends TagInfo {
 
   protected LinkReference linkReference() {
     if (mLink == null) {
-      mLink =
-          LinkReference.parse(text(), mBase, position(), (!"@see".equals(name()))
-              && (mBase != null ? mBase.checkLevel() : true));
+      mLink = LinkReference.parse(text(), mBase, position(), printOnErrors());
     }
     return mLink;
   }
 
+  /** Resolves the link ahead of rendering; see {@link LinkReference#resolveAhead}. */
+  void resolveAhead() {
+    LinkReference.resolveAhead(text(), mBase, position(), printOnErrors());
+  }
+
+  private boolean printOnErrors() {
+    return !"@see".equals(name()) && (mBase != null ? mBase.checkLevel() : true);
+  }
+
   public String label() {
     return linkReference().label;
   }
@@ -79,6 +79,13 @@ public class SinceTagger {
   public boolean hasVersions() {
     return !xmlToName.isEmpty();
   }
+
+  /**
+   * Returns the version names by the apicheck XML files they were read from, oldest first.
+   */
+  Map<String, String> versions() {
+    return Collections.unmodifiableMap(xmlToName);
+  }
   
   public static String keyForName(String name) {
     if (name == null) {
@@ -33,8 +33,9 @@ public class SourcePositionInfo implements Comparable {
 
   /**
    * Given this position and str which occurs at that position, as well as str an index into str,
-   * find the SourcePositionInfo.
-   * 
+   * find the SourcePositionInfo. Positions are never changed once made, so if index is on the
+   * first line of str this returns that itself rather than a copy.
+   *
    * @throw StringIndexOutOfBoundsException if index &gt; str.length()
    */
   public static SourcePositionInfo add(SourcePositionInfo that, String str, int index) {
@@ -50,6 +51,66 @@ public class SourcePositionInfo implements Comparable {
       }
       prev = c;
     }
+    return at(that, line);
+  }
+
+  /**
+   * Returns where the lines in str break, for {@link #add(SourcePositionInfo, int[], int)}. A
+   * "\r\n" pair is one break, at the '\r'.
+   */
+  public static int[] lineBreaks(String str) {
+    int count = 0;
+    char prev = 0;
+    final int len = str.length();
+    for (int i = 0; i < len; i++) {
+      char c = str.charAt(i);
+      if (c == '\r' || (c == '\n' && prev != '\r')) {
+        count++;
+      }
+      prev = c;
+    }
+
+    int[] breaks = new int[count];
+    count = 0;
+    prev = 0;
+    for (int i = 0; i < len; i++) {
+      char c = str.charAt(i);
+      if (c == '\r' || (c == '\n' && prev != '\r')) {
+        breaks[count++] = i;
+      }
+      prev = c;
+    }
+    return breaks;
+  }
+
+  /**
+   * The same as {@link #add(SourcePositionInfo, String, int)}, but finds the line with a binary
+   * search in the string's {@link #lineBreaks}, so that working out many positions in one string
+   * doesn't scan it from the start every time.
+   */
+  public static SourcePositionInfo add(SourcePositionInfo that, int[] breaks, int index) {
+    if (that == null) {
+      return null;
+    }
+    // the number of breaks before index
+    int low = 0;
+    int high = breaks.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (breaks[mid] < index) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return at(that, that.line + low);
+  }
+
+  /** Returns the start of {@code line} in the file {@code that} is in. */
+  private static SourcePositionInfo at(SourcePositionInfo that, int line) {
+    if (line == that.line && that.column == 0) {
+      return that;
+    }
     return new SourcePositionInfo(that.file, line, 0);
   }
 
@@ -622,8 +622,8 @@ public class Stubs {
     MethodInfo om = mi.findSuperclassImplementation(notStrippable);
     if (om != null) {
       // Visibility mismatch is an API change, so check for it
-      if (mi.mIsPrivate == om.mIsPrivate && mi.mIsPublic == om.mIsPublic
-          && mi.mIsProtected == om.mIsProtected) {
+      if (mi.isPrivate() == om.isPrivate() && mi.isPublic() == om.isPublic()
+          && mi.isProtected() == om.isProtected()) {
         // Look only for overrides of an ancestor class implementation,
         // not of e.g. an abstract or interface method declaration
         if (!om.isAbstract()) {
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import com.sun.javadoc.RootDoc;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Classes and packages by name, for resolving {@code @link} and {@code @see} references with a
+ * hash lookup. {@link Converter#makeInfo} builds it once the model is converted, with every
+ * class by qualified name and every package by name.
+ *
+ * <p>Names that aren't in it are looked up in javadoc as before, and the answer is kept,
+ * including when there is none. The names a class's references use are kept for each class,
+ * since what a simple name means depends on the class's package and imports. Members are found
+ * through {@link ClassInfo#findField} and {@link ClassInfo#findMethod}, which keep their own
+ * maps by name.
+ *
+ * <p>The answers javadoc gave are saved in a {@link ModelSnapshot}, and when rendering from one
+ * there's no javadoc to ask, so a name it doesn't have an answer for resolves to nothing. The
+ * same goes once {@link Converter#releaseJavadoc} has let go of javadoc.
+ */
+class SymbolIndex {
+  /** Kept for a name that doesn't resolve to anything. */
+  private static final Object NONE = new Object();
+
+  private static RootDoc sRoot;
+  private static boolean sBuilt;
+  private static final ConcurrentMap<String, Object> sClasses =
+      new ConcurrentHashMap<String, Object>();
+  private static final ConcurrentMap<String, Object> sPackages =
+      new ConcurrentHashMap<String, Object>();
+  private static final ConcurrentMap<ScopedName, Object> sScopedClasses =
+      new ConcurrentHashMap<ScopedName, Object>();
+  // what javadoc answered for ClassInfo.findClass and findInnerClass, which comments use before
+  // the index is built, so build() keeps them
+  private static final ConcurrentMap<ScopedName, Object> sClassesIn =
+      new ConcurrentHashMap<ScopedName, Object>();
+  private static final ConcurrentMap<ScopedName, Object> sInnerClassesIn =
+      new ConcurrentHashMap<ScopedName, Object>();
+
+  /**
+   * Builds the index from {@code classes}, looking names that aren't among them up in
+   * {@code root}, or in nothing if it's null.
+   */
+  static void build(RootDoc root, ClassInfo[] classes) {
+    sRoot = root;
+    sBuilt = true;
+    sClasses.clear();
+    sPackages.clear();
+    sScopedClasses.clear();
+    for (ClassInfo cl : classes) {
+      sClasses.putIfAbsent(cl.qualifiedName(), cl);
+      PackageInfo pkg = cl.containingPackage();
+      if (pkg != null) {
+        sPackages.putIfAbsent(pkg.name(), pkg);
+      }
+    }
+  }
+
+  /**
+   * Stops looking names up in javadoc, after adding the {@code classes} loaded since the index
+   * was built. Names that weren't looked up before resolve to nothing from now on.
+   */
+  static void release(ClassInfo[] classes) {
+    sRoot = null;
+    for (ClassInfo cl : classes) {
+      sClasses.putIfAbsent(cl.qualifiedName(), cl);
+      PackageInfo pkg = cl.containingPackage();
+      if (pkg != null) {
+        sPackages.putIfAbsent(pkg.name(), pkg);
+      }
+    }
+  }
+
+  static boolean isBuilt() {
+    return sBuilt;
+  }
+
+  /** Returns the class with this qualified name, or null. */
+  static ClassInfo findClass(String qualifiedName) {
+    Object cl = sClasses.get(qualifiedName);
+    if (cl == null) {
+      cl = sRoot != null ? Converter.obtainClass(sRoot.classNamed(qualifiedName)) : null;
+      sClasses.putIfAbsent(qualifiedName, cl != null ? cl : NONE);
+    }
+    return cl == NONE ? null : (ClassInfo) cl;
+  }
+
+  /** Returns the package with this name, or null. */
+  static PackageInfo findPackage(String name) {
+    Object pkg = sPackages.get(name);
+    if (pkg == null) {
+      pkg = sRoot != null ? Converter.obtainPackage(sRoot.packageNamed(name)) : null;
+      sPackages.putIfAbsent(name, pkg != null ? pkg : NONE);
+    }
+    return pkg == NONE ? null : (PackageInfo) pkg;
+  }
+
+  /**
+   * Returns the class that {@code name} refers to when used in {@code scope}: an inner class of
+   * it, a class it can see by its simple name, or an inner class of one of those. Returns null if
+   * it's none of these, in which case the name may still be a qualified one.
+   */
+  static ClassInfo findClass(ClassInfo scope, String name) {
+    ScopedName key = new ScopedName(scope, name);
+    Object cl = sScopedClasses.get(key);
+    if (cl == null) {
+      cl = findClassInScope(scope, name);
+      sScopedClasses.putIfAbsent(key, cl != null ? cl : NONE);
+    }
+    return cl == NONE ? null : (ClassInfo) cl;
+  }
+
+  /** Returns what javadoc finds for {@code name} in the context of {@code scope}, or null. */
+  static ClassInfo classNamedIn(ClassInfo scope, String name) {
+    ScopedName key = new ScopedName(scope, name);
+    Object cl = sClassesIn.get(key);
+    if (cl == null) {
+      cl = scope.lookUpClass(name);
+      sClassesIn.putIfAbsent(key, cl != null ? cl : NONE);
+    }
+    return cl == NONE ? null : (ClassInfo) cl;
+  }
+
+  /**
+   * Returns what javadoc finds for the dotted {@code name} taken as inner classes of
+   * {@code scope}, or null.
+   */
+  static ClassInfo innerClassNamedIn(ClassInfo scope, String name) {
+    ScopedName key = new ScopedName(scope, name);
+    Object cl = sInnerClassesIn.get(key);
+    if (cl == null) {
+      cl = scope.lookUpInnerClass(name);
+      sInnerClassesIn.putIfAbsent(key, cl != null ? cl : NONE);
+    }
+    return cl == NONE ? null : (ClassInfo) cl;
+  }
+
+  static Map<String, ClassInfo> classesByName() {
+    return answers(sClasses);
+  }
+
+  static Map<String, PackageInfo> packagesByName() {
+    return answers(sPackages);
+  }
+
+  static Map<ScopedName, ClassInfo> classesNamedIn() {
+    return answers(sClassesIn);
+  }
+
+  static Map<ScopedName, ClassInfo> innerClassesNamedIn() {
+    return answers(sInnerClassesIn);
+  }
+
+  /**
+   * Adds names with the answers saved from an earlier run, where null is a name that didn't
+   * resolve. Used after {@link #build} when rendering from a {@link ModelSnapshot}.
+   */
+  static void restore(Map<String, ClassInfo> classes, Map<String, PackageInfo> packages,
+      Map<ScopedName, ClassInfo> classesIn, Map<ScopedName, ClassInfo> innerClassesIn) {
+    restore(sClasses, classes);
+    restore(sPackages, packages);
+    restore(sClassesIn, classesIn);
+    restore(sInnerClassesIn, innerClassesIn);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K, V> Map<K, V> answers(Map<K, Object> map) {
+    Map<K, V> result = new LinkedHashMap<K, V>();
+    for (Map.Entry<K, Object> e : map.entrySet()) {
+      Object value = e.getValue();
+      result.put(e.getKey(), value == NONE ? null : (V) value);
+    }
+    return result;
+  }
+
+  private static <K, V> void restore(Map<K, Object> map, Map<K, V> answers) {
+    for (Map.Entry<K, V> e : answers.entrySet()) {
+      V value = e.getValue();
+      map.put(e.getKey(), value != null ? value : NONE);
+    }
+  }
+
+  static ClassInfo findClassInScope(ClassInfo scope, String name) {
+    ClassInfo cl = scope.extendedFindClass(name);
+    if (cl == null) {
+      cl = scope.findClass(name);
+    }
+    if (cl == null) {
+      cl = scope.findInnerClass(name);
+    }
+    return cl;
+  }
+
+  static final class ScopedName {
+    private final ClassInfo mScope;
+    private final String mName;
+
+    ScopedName(ClassInfo scope, String name) {
+      mScope = scope;
+      mName = name;
+    }
+
+    ClassInfo scope() {
+      return mScope;
+    }
+
+    String name() {
+      return mName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof ScopedName)) {
+        return false;
+      }
+      ScopedName that = (ScopedName) o;
+      return mScope == that.mScope && mName.equals(that.mName);
+    }
+
+    @Override
+    public int hashCode() {
+      return mName.hashCode() * 31 + System.identityHashCode(mScope);
+    }
+  }
+}
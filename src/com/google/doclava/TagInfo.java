@@ -22,6 +22,8 @@ public class TagInfo {
   private String mName;
   private String mText;
   private String mKind;
+  // The tags of one block share its position, and the tags of a comment's first line share the
+  // comment's; see SourcePositionInfo.add.
   private SourcePositionInfo mPosition;
 
   TagInfo(String n, String k, String t, SourcePositionInfo sp) {
@@ -78,7 +80,7 @@ public class TagInfo {
           j = makeHDF(data, base, inherited.tags(), inherited.inherited(), j, depth + 1);
         } else {
           if (t.name().equals("@inheritDoc")) {
-            Errors.error(Errors.BAD_INHERITDOC, t.mPosition,
+            Errors.error(Errors.BAD_INHERITDOC, t.position(),
                 "@inheritDoc on class/method that is not inherited");
           }
           t.makeHDF(data, base + "." + j);
@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import com.google.clearsilver.jsilver.JSilver;
+import com.google.clearsilver.jsilver.TemplateRenderer;
+import com.google.clearsilver.jsilver.autoescape.AutoEscapeOptions;
+import com.google.clearsilver.jsilver.autoescape.EscapeMode;
+import com.google.clearsilver.jsilver.compiler.BaseCompiledTemplate;
+import com.google.clearsilver.jsilver.compiler.TemplateTranslator;
+import com.google.clearsilver.jsilver.data.Data;
+import com.google.clearsilver.jsilver.functions.FunctionExecutor;
+import com.google.clearsilver.jsilver.functions.bundles.ClearSilverCompatibleFunctions;
+import com.google.clearsilver.jsilver.interpreter.LoadingTemplateFactory;
+import com.google.clearsilver.jsilver.resourceloader.ResourceLoader;
+import com.google.clearsilver.jsilver.syntax.TemplateSyntaxTree;
+import com.google.clearsilver.jsilver.template.Template;
+import com.google.clearsilver.jsilver.template.TemplateLoader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Renders templates compiled to Java classes, keeping the classes in a directory so that later
+ * runs can load them instead of compiling again. A compiled class is named after a hash of its
+ * template's text, so a template that changes simply gets a new class.
+ *
+ * <p>Within a run each template is loaded once, including the ones pulled in with
+ * {@code include}, and every page after that runs the compiled code directly.
+ */
+public class TemplateCache implements TemplateLoader, TemplateRenderer {
+  /** Bump when the way classes are generated changes, to ignore classes already on disk. */
+  private static final String FORMAT = "1";
+  private static final String PACKAGE = "com.google.doclava.templates";
+  /**
+   * The class file version this JVM's compiler targets and the JSilver that translates the
+   * templates, so that a cache directory shared between toolchains never hands one of them
+   * classes generated or compiled by another.
+   */
+  private static final String TOOLCHAIN = System.getProperty("java.class.version") + '\0'
+      + jarIdentity(BaseCompiledTemplate.class);
+
+  private final JSilver mJSilver;
+  private final ResourceLoader mResourceLoader;
+  private final File mDirectory;
+  private final ClassLoader mClassLoader;
+  private final FunctionExecutor mFunctions = new ClearSilverCompatibleFunctions();
+  private final AutoEscapeOptions mAutoEscapeOptions = new AutoEscapeOptions();
+  private final ConcurrentMap<String, Template> mTemplates =
+      new ConcurrentHashMap<String, Template>();
+  private int mCompiled;
+  private int mLoaded;
+
+  /**
+   * @param jSilver renders the templates once they are loaded, and interprets the ones that
+   *        can't be compiled
+   * @param resourceLoader where the template text is read from
+   * @param directory where the compiled classes are kept
+   */
+  public TemplateCache(JSilver jSilver, ResourceLoader resourceLoader, File directory) {
+    mJSilver = jSilver;
+    mResourceLoader = resourceLoader;
+    mDirectory = directory;
+    mDirectory.mkdirs();
+    try {
+      mClassLoader = new URLClassLoader(new URL[] {directory.toURI().toURL()},
+          TemplateCache.class.getClassLoader());
+    } catch (MalformedURLException e) {
+      throw new IllegalArgumentException("Bad template cache directory: " + directory, e);
+    }
+  }
+
+  /** Returns the number of templates compiled by this run. */
+  public synchronized int compiledCount() {
+    return mCompiled;
+  }
+
+  /** Returns the number of templates this run found already compiled on disk. */
+  public synchronized int loadedCount() {
+    return mLoaded;
+  }
+
+  public Template load(String templateName, ResourceLoader resourceLoader,
+      EscapeMode escapeMode) {
+    String key = escapeMode + ":" + templateName;
+    Template template = mTemplates.get(key);
+    if (template == null) {
+      template = compile(key, templateName, resourceLoader, escapeMode);
+    }
+    return template;
+  }
+
+  public Template createTemp(String name, String content, EscapeMode escapeMode) {
+    // evar and lvar content differs from page to page; there's nothing worth keeping
+    return mJSilver.getTemplateLoader().createTemp(name, content, escapeMode);
+  }
+
+  public void render(String templateName, Data data, Appendable output,
+      ResourceLoader resourceLoader) throws IOException {
+    Template template = load(templateName, resourceLoader, mJSilver.getEscapeMode(data));
+    mJSilver.render(template, data, output, resourceLoader);
+  }
+
+  public void render(String templateName, Data data, Appendable output) throws IOException {
+    render(templateName, data, output, mResourceLoader);
+  }
+
+  public String render(String templateName, Data data) throws IOException {
+    StringBuilder output = new StringBuilder();
+    render(templateName, data, output);
+    return output.toString();
+  }
+
+  public void render(Template template, Data data, Appendable output,
+      ResourceLoader resourceLoader) throws IOException {
+    mJSilver.render(template, data, output, resourceLoader);
+  }
+
+  public void render(Template template, Data data, Appendable output) throws IOException {
+    mJSilver.render(template, data, output);
+  }
+
+  public String render(Template template, Data data) throws IOException {
+    return mJSilver.render(template, data);
+  }
+
+  public void renderFromContent(String content, Data data, Appendable output)
+      throws IOException {
+    mJSilver.renderFromContent(content, data, output);
+  }
+
+  public String renderFromContent(String content, Data data) throws IOException {
+    return mJSilver.renderFromContent(content, data);
+  }
+
+  /**
+   * Returns the compiled form of a template, loading it from the cache directory or compiling
+   * it there first. Templates that can't be compiled are interpreted instead.
+   */
+  private synchronized Template compile(String key, String templateName,
+      ResourceLoader resourceLoader, EscapeMode escapeMode) {
+    Template template = mTemplates.get(key);
+    if (template == null) {
+      template = loadOrCompile(templateName, resourceLoader, escapeMode);
+      mTemplates.put(key, template);
+    }
+    return template;
+  }
+
+  private Template loadOrCompile(String templateName, ResourceLoader resourceLoader,
+      EscapeMode escapeMode) {
+    String className;
+    try {
+      className = "Template_" + hash(templateName, resourceLoader, escapeMode);
+    } catch (IOException e) {
+      // let the interpreter report the missing or unreadable template
+      return mJSilver.getTemplateLoader().load(templateName, resourceLoader, escapeMode);
+    }
+
+    Class<?> cls = loadClass(className);
+    if (cls == null) {
+      if (!compileClass(templateName, className, resourceLoader, escapeMode)
+          || (cls = loadClass(className)) == null) {
+        System.err.println("Could not compile template " + templateName
+            + ", interpreting it instead");
+        return mJSilver.getTemplateLoader().load(templateName, resourceLoader, escapeMode);
+      }
+      mCompiled++;
+    } else {
+      mLoaded++;
+    }
+
+    BaseCompiledTemplate compiled;
+    try {
+      compiled = (BaseCompiledTemplate) cls.newInstance();
+    } catch (InstantiationException e) {
+      throw new IllegalStateException("Bad compiled template " + className, e);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException("Bad compiled template " + className, e);
+    }
+    compiled.setFunctionExecutor(mFunctions);
+    compiled.setTemplateName(templateName);
+    compiled.setTemplateLoader(this);
+    compiled.setEscapeMode(escapeMode);
+    compiled.setAutoEscapeOptions(mAutoEscapeOptions);
+    return compiled;
+  }
+
+  private Class<?> loadClass(String className) {
+    if (!new File(mDirectory, PACKAGE.replace('.', File.separatorChar) + File.separator
+        + className + ".class").isFile()) {
+      return null;
+    }
+    try {
+      return mClassLoader.loadClass(PACKAGE + "." + className);
+    } catch (ClassNotFoundException e) {
+      return null;
+    } catch (LinkageError e) {
+      // e.g. a class compiled for a newer JVM, or one left truncated by an interrupted run
+      System.err.println("Ignoring unloadable template class " + className + ": " + e);
+      return null;
+    }
+  }
+
+  private boolean compileClass(String templateName, String className,
+      ResourceLoader resourceLoader, EscapeMode escapeMode) {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    if (compiler == null) {
+      return false;
+    }
+
+    TemplateSyntaxTree tree =
+        new LoadingTemplateFactory().find(templateName, resourceLoader, escapeMode);
+    StringWriter java = new StringWriter();
+    tree.apply(new TemplateTranslator(PACKAGE, className, java,
+        mAutoEscapeOptions.getPropagateEscapeStatus() && escapeMode.isAutoEscapingMode()));
+
+    File source = new File(mDirectory, "src" + File.separator
+        + PACKAGE.replace('.', File.separatorChar) + File.separator + className + ".java");
+    ClearPage.ensureDirectory(source);
+    try {
+      Writer out = new OutputStreamWriter(new FileOutputStream(source), "UTF-8");
+      try {
+        out.write(java.toString());
+      } finally {
+        out.close();
+      }
+    } catch (IOException e) {
+      System.err.println("error writing " + source + ": " + e.getMessage());
+      return false;
+    }
+
+    String classPath = codeSourcePath(BaseCompiledTemplate.class);
+    String[] args = classPath == null
+        ? new String[] {"-nowarn", "-encoding", "UTF-8", "-d", mDirectory.getPath(),
+            source.getPath()}
+        : new String[] {"-nowarn", "-encoding", "UTF-8", "-classpath", classPath, "-d",
+            mDirectory.getPath(), source.getPath()};
+    return compiler.run(null, null, System.err, args) == 0;
+  }
+
+  /**
+   * Returns the jar or directory a class was loaded from, for the compiler's class path.
+   */
+  private static String codeSourcePath(Class<?> cls) {
+    CodeSource source = cls.getProtectionDomain().getCodeSource();
+    if (source == null) {
+      return null;
+    }
+    try {
+      return new File(source.getLocation().toURI()).getPath();
+    } catch (URISyntaxException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the location, size and modification time of the jar or directory a class was loaded
+   * from, which changes whenever that jar is replaced.
+   */
+  private static String jarIdentity(Class<?> cls) {
+    String path = codeSourcePath(cls);
+    if (path == null) {
+      return "";
+    }
+    File file = new File(path);
+    return path + '\0' + file.length() + '\0' + file.lastModified();
+  }
+
+  private String hash(String templateName, ResourceLoader resourceLoader,
+      EscapeMode escapeMode) throws IOException {
+    MessageDigest digest = BuildManifest.newDigest();
+    StringBuilder key = new StringBuilder();
+    key.append(FORMAT).append('\0').append(TOOLCHAIN).append('\0').append(escapeMode).append('\0')
+        .append(mAutoEscapeOptions.getPropagateEscapeStatus()).append('\0');
+
+    Reader in = resourceLoader.openOrFail(templateName);
+    try {
+      char[] buffer = new char[8 * 1024];
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+        key.append(buffer, 0, n);
+      }
+    } finally {
+      resourceLoader.close(in);
+    }
+    digest.update(key.toString().getBytes("UTF-8"));
+    return BuildManifest.toHex(digest.digest());
+  }
+}
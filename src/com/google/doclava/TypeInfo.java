@@ -265,6 +265,18 @@ public class TypeInfo {
     mIsWildcard = b;
   }
 
+  TypeInfo[] superBounds() {
+    return mSuperBounds;
+  }
+
+  TypeInfo[] extendsBounds() {
+    return mExtendsBounds;
+  }
+
+  boolean isWildcard() {
+    return mIsWildcard;
+  }
+
   static HashSet<String> typeVariables(TypeInfo[] params) {
     return typeVariables(params, new HashSet<String>());
   }
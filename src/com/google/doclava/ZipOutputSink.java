@@ -0,0 +1,354 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes everything under a root directory as entries of a single zip archive instead of as
+ * files. Entry names are paths relative to the root. Files outside the root are written to disk
+ * as usual.
+ *
+ * <p>Each entry is compressed as it is written, by a deflater that belongs to the writing thread,
+ * so pages rendered on different threads are compressed in parallel. Only the compressed bytes
+ * are held until the entry is closed, and the threads only wait for each other while those are
+ * appended to the archive.
+ *
+ * <p>As in a directory, a file written twice keeps its last content: the archive's central
+ * directory, which is what zip readers look entries up in, lists only the last copy.
+ */
+public class ZipOutputSink implements OutputSink {
+  private static final int LOCAL_HEADER = 0x04034b50;
+  private static final int CENTRAL_HEADER = 0x02014b50;
+  private static final int ZIP64_END = 0x06064b50;
+  private static final int ZIP64_LOCATOR = 0x07064b50;
+  private static final int END = 0x06054b50;
+  private static final int VERSION = 20;
+  private static final int VERSION_ZIP64 = 45;
+  private static final int FLAG_UTF8 = 0x0800;
+  private static final int DEFLATED = 8;
+  private static final long MAX_16 = 0xffffL;
+  private static final long MAX_32 = 0xffffffffL;
+
+  private final String mRootPrefix;
+  private final OutputStream mZip;
+  private final OutputSink mOutside = new FileOutputSink();
+  private final int mDosTime;
+  private final Map<String, Entry> mEntries = new LinkedHashMap<String, Entry>();
+  private final List<Compressor> mCompressors = new ArrayList<Compressor>();
+  private final ThreadLocal<List<Compressor>> mThreadCompressors =
+      new ThreadLocal<List<Compressor>>() {
+        @Override
+        protected List<Compressor> initialValue() {
+          return new ArrayList<Compressor>();
+        }
+      };
+  private long mOffset;
+
+  /**
+   * @param zipFile the archive to create, replacing any that is there
+   * @param root the directory whose contents go into the archive
+   */
+  public ZipOutputSink(File zipFile, File root) throws IOException {
+    mRootPrefix = root.getAbsolutePath() + File.separator;
+    ClearPage.ensureDirectory(zipFile);
+    mZip = new BufferedOutputStream(new FileOutputStream(zipFile), 64 * 1024);
+    mDosTime = dosTime(System.currentTimeMillis());
+  }
+
+  public OutputStream open(File file) throws IOException {
+    String name = entryName(file);
+    if (name == null) {
+      return mOutside.open(file);
+    }
+    return new EntryStream(name, compressor());
+  }
+
+  public void copy(File from, File to) throws IOException {
+    ClearPage.copyToStream(from, open(to));
+  }
+
+  public boolean hasContent(File file, long size, long crc) throws IOException {
+    String name = entryName(file);
+    return name == null && mOutside.hasContent(file, size, crc);
+  }
+
+  public synchronized void close() throws IOException {
+    try {
+      long start = mOffset;
+      boolean zip64 = mEntries.size() >= MAX_16;
+      for (Map.Entry<String, Entry> e : mEntries.entrySet()) {
+        writeCentralHeader(e.getKey(), e.getValue());
+      }
+      long size = mOffset - start;
+      zip64 |= start >= MAX_32 || size >= MAX_32;
+      if (zip64) {
+        long end = mOffset;
+        writeInt(ZIP64_END);
+        writeLong(44);
+        writeShort(VERSION_ZIP64);
+        writeShort(VERSION_ZIP64);
+        writeInt(0);
+        writeInt(0);
+        writeLong(mEntries.size());
+        writeLong(mEntries.size());
+        writeLong(size);
+        writeLong(start);
+        writeInt(ZIP64_LOCATOR);
+        writeInt(0);
+        writeLong(end);
+        writeInt(1);
+      }
+      writeInt(END);
+      writeShort(0);
+      writeShort(0);
+      writeShort((int) Math.min(mEntries.size(), MAX_16));
+      writeShort((int) Math.min(mEntries.size(), MAX_16));
+      writeInt(Math.min(size, MAX_32));
+      writeInt(Math.min(start, MAX_32));
+      writeShort(0);
+    } finally {
+      mZip.close();
+      synchronized (mCompressors) {
+        for (Compressor c : mCompressors) {
+          c.mDeflater.end();
+        }
+      }
+    }
+  }
+
+  private String entryName(File file) {
+    String path = file.getAbsolutePath();
+    if (!path.startsWith(mRootPrefix)) {
+      return null;
+    }
+    return path.substring(mRootPrefix.length()).replace(File.separatorChar, '/');
+  }
+
+  /**
+   * Returns one of this thread's compressors that no open entry is using, making another if they
+   * all are. A thread has entries open at once when, for example, each page also gets a
+   * compressed copy.
+   */
+  private Compressor compressor() {
+    List<Compressor> compressors = mThreadCompressors.get();
+    for (Compressor c : compressors) {
+      if (!c.mInUse) {
+        c.mInUse = true;
+        return c;
+      }
+    }
+    Compressor c = new Compressor();
+    compressors.add(c);
+    synchronized (mCompressors) {
+      mCompressors.add(c);
+    }
+    c.mInUse = true;
+    return c;
+  }
+
+  /** Appends an entry's local header and compressed bytes to the archive. */
+  private synchronized void addEntry(String name, Entry entry, byte[] content, int length)
+      throws IOException {
+    if (entry.mCompressedSize >= MAX_32 || entry.mSize >= MAX_32) {
+      throw new IOException(name + " is too large for the archive");
+    }
+    entry.mOffset = mOffset;
+    byte[] nameBytes = name.getBytes("UTF-8");
+    writeInt(LOCAL_HEADER);
+    writeShort(VERSION);
+    writeShort(FLAG_UTF8);
+    writeShort(DEFLATED);
+    writeInt(mDosTime);
+    writeInt(entry.mCrc);
+    writeInt(entry.mCompressedSize);
+    writeInt(entry.mSize);
+    writeShort(nameBytes.length);
+    writeShort(0);
+    write(nameBytes, 0, nameBytes.length);
+    write(content, 0, length);
+    // a later copy replaces an earlier one, which is left in the archive unlisted
+    mEntries.put(name, entry);
+  }
+
+  private void writeCentralHeader(String name, Entry entry) throws IOException {
+    byte[] nameBytes = name.getBytes("UTF-8");
+    boolean zip64 = entry.mOffset >= MAX_32;
+    writeInt(CENTRAL_HEADER);
+    writeShort(zip64 ? VERSION_ZIP64 : VERSION);
+    writeShort(zip64 ? VERSION_ZIP64 : VERSION);
+    writeShort(FLAG_UTF8);
+    writeShort(DEFLATED);
+    writeInt(mDosTime);
+    writeInt(entry.mCrc);
+    writeInt(entry.mCompressedSize);
+    writeInt(entry.mSize);
+    writeShort(nameBytes.length);
+    writeShort(zip64 ? 12 : 0);
+    writeShort(0);
+    writeShort(0);
+    writeShort(0);
+    writeInt(0);
+    writeInt(zip64 ? MAX_32 : entry.mOffset);
+    write(nameBytes, 0, nameBytes.length);
+    if (zip64) {
+      // the zip64 extra field, holding just the offset that didn't fit
+      writeShort(1);
+      writeShort(8);
+      writeLong(entry.mOffset);
+    }
+  }
+
+  private void write(byte[] b, int off, int len) throws IOException {
+    mZip.write(b, off, len);
+    mOffset += len;
+  }
+
+  private void writeShort(int v) throws IOException {
+    mZip.write(v & 0xff);
+    mZip.write((v >>> 8) & 0xff);
+    mOffset += 2;
+  }
+
+  private void writeInt(long v) throws IOException {
+    writeShort((int) (v & 0xffff));
+    writeShort((int) ((v >>> 16) & 0xffff));
+  }
+
+  private void writeLong(long v) throws IOException {
+    writeInt(v & MAX_32);
+    writeInt(v >>> 32);
+  }
+
+  /** Returns {@code millis} in the date and time format that zip headers use. */
+  private static int dosTime(long millis) {
+    Calendar c = Calendar.getInstance();
+    c.setTimeInMillis(millis);
+    int year = c.get(Calendar.YEAR);
+    if (year < 1980) {
+      return (1 << 21) | (1 << 16);
+    }
+    return (year - 1980) << 25 | (c.get(Calendar.MONTH) + 1) << 21
+        | c.get(Calendar.DAY_OF_MONTH) << 16 | c.get(Calendar.HOUR_OF_DAY) << 11
+        | c.get(Calendar.MINUTE) << 5 | c.get(Calendar.SECOND) >> 1;
+  }
+
+  /** What the central directory needs to know about an entry. */
+  private static final class Entry {
+    long mCrc;
+    long mSize;
+    long mCompressedSize;
+    long mOffset;
+  }
+
+  /** A deflater and a buffer for its output, reused for one thread's entries in turn. */
+  private static final class Compressor {
+    final Deflater mDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    final byte[] mChunk = new byte[16 * 1024];
+    final Buffer mOut = new Buffer();
+    boolean mInUse;
+  }
+
+  /** A byte array stream whose bytes can be read without copying them. */
+  private static final class Buffer extends ByteArrayOutputStream {
+    Buffer() {
+      super(16 * 1024);
+    }
+
+    byte[] bytes() {
+      return buf;
+    }
+  }
+
+  /**
+   * Compresses one entry's bytes as they are written, and adds them to the archive on close.
+   */
+  private final class EntryStream extends OutputStream {
+    private final String mName;
+    private final Compressor mCompressor;
+    private final CRC32 mCrc = new CRC32();
+    private long mSize;
+    private boolean mClosed;
+
+    EntryStream(String name, Compressor compressor) {
+      mName = name;
+      mCompressor = compressor;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return;
+      }
+      mCrc.update(b, off, len);
+      mSize += len;
+      Deflater deflater = mCompressor.mDeflater;
+      deflater.setInput(b, off, len);
+      while (!deflater.needsInput()) {
+        drain();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (mClosed) {
+        return;
+      }
+      mClosed = true;
+      Deflater deflater = mCompressor.mDeflater;
+      Buffer out = mCompressor.mOut;
+      try {
+        deflater.finish();
+        while (!deflater.finished()) {
+          drain();
+        }
+        Entry entry = new Entry();
+        entry.mCrc = mCrc.getValue();
+        entry.mSize = mSize;
+        entry.mCompressedSize = out.size();
+        addEntry(mName, entry, out.bytes(), out.size());
+      } finally {
+        deflater.reset();
+        out.reset();
+        mCompressor.mInUse = false;
+      }
+    }
+
+    private void drain() {
+      byte[] chunk = mCompressor.mChunk;
+      int n = mCompressor.mDeflater.deflate(chunk, 0, chunk.length);
+      mCompressor.mOut.write(chunk, 0, n);
+    }
+  }
+}
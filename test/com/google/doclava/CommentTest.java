@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.doclava;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks the tags that comments are split into. Each case is a comment's text followed by the
+ * tags expected from it, written as kind, name and text: first the inline tags, then the
+ * {@code @param}, {@code @see} and {@code @throws} tags, then the tags inside the
+ * {@code @return} and {@code @deprecated} tags.
+ * It's in Doclava's package to read the tags, which aren't public.
+ */
+public class CommentTest extends TestCase {
+  private static final String[][] CASES = {
+      // '@' that isn't the first thing on its line
+      {"Mails a@b.com, or @param if\nyou like. @return nothing",
+          "Text Text [Mails a@b.com, or @param if\nyou like. @return nothing]"},
+      {"Sums them.\n  @param a the first @param b\n@return a @ b",
+          "Text Text [Sums them.]",
+          "@param @param [a the first @param b]",
+          "Text Text [a @ b]"},
+
+      // inline tags end at the first '}', even inside braces of their own
+      {"Calls {@code f({x})} once.",
+          "Text Text [Calls ]",
+          "@code @code [f({x]",
+          "Text Text [)} once.]"},
+      {"Uses {@code {nested}} and {@literal <b>}.",
+          "Text Text [Uses ]",
+          "@code @code [{nested]",
+          "Text Text [} and ]",
+          "Text Text [&lt;b&gt;]",
+          "Text Text [.]"},
+
+      // an inline tag with no closing brace is left as text, unless another tag's brace closes it
+      {"See {@link Foo for more.",
+          "Text Text [See {@link Foo for more.]"},
+      {"See {@link Foo for {@link Bar}.",
+          "Text Text [See ]",
+          "@see @link [Foo for {@link Bar]",
+          "Text Text [.]"},
+
+      // '@' at the end of the text
+      {"Ends with @",
+          "Text Text [Ends with @]"},
+      {"Ends on a line of its own.\n@",
+          "Text Text [Ends on a line of its own.]",
+          "Text Text [@]"},
+      {"Has a tag with no value.\n@deprecated",
+          "Text Text [Has a tag with no value.]",
+          "Text Text [@deprecated]"},
+
+      // CRLF line ends
+      {"First line.\r\n second line.\r\n @param x the x\r\n @return the\r\n value\r\n",
+          "Text Text [First line.\r\n second line.]",
+          "@param @param [x the x]",
+          "Text Text [the\r\n value\r\n]"},
+      {"\r\n\r\nLeading lines.\r\n@see Foo",
+          "Text Text [Leading lines.]",
+          "@see @see [Foo]"},
+  };
+
+  public void testTags() {
+    for (String[] c : CASES) {
+      Comment comment = new Comment(c[0], null, null);
+      List<String> actual = new ArrayList<String>();
+      describe(comment.tags(), actual);
+      describe(comment.paramTags(), actual);
+      describe(comment.seeTags(), actual);
+      describe(comment.throwsTags(), actual);
+      describe(comment.returnTags(), actual);
+      describe(comment.deprecatedTags(), actual);
+      assertEquals(c[0], Arrays.asList(c).subList(1, c.length), actual);
+    }
+  }
+
+  private static void describe(TagInfo[] tags, List<String> out) {
+    for (TagInfo tag : tags) {
+      out.add(tag.kind() + " " + tag.name() + " [" + tag.text() + "]");
+    }
+  }
+}
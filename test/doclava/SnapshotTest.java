@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package doclava;
+
+import com.google.doclava.Doclava;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks that rendering from a -snapshot gives the same output as documenting the sources
+ * directly. Doclava keeps its model in static fields, so each run gets a JVM of its own.
+ */
+public class SnapshotTest extends TestCase {
+  private File mDirectory;
+
+  public void setUp() throws IOException {
+    mDirectory = File.createTempFile("snapshot", "");
+    mDirectory.delete();
+    mDirectory.mkdirs();
+  }
+
+  public void tearDown() {
+    delete(mDirectory);
+  }
+
+  public void testRenderFromSnapshotMatchesDirectRun() throws Exception {
+    File direct = new File(mDirectory, "direct");
+    File recorded = new File(mDirectory, "recorded");
+    File rendered = new File(mDirectory, "rendered");
+    File snapshot = new File(mDirectory, "model.snapshot");
+
+    assertEquals(0, run("com.sun.tools.javadoc.Main", direct, "-doclet", Doclava.class.getName(),
+        "doclava.sample"));
+    assertEquals(0, run("com.sun.tools.javadoc.Main", recorded, "-doclet",
+        Doclava.class.getName(), "-snapshot", snapshot.getPath(), "doclava.sample"));
+    assertTrue(snapshot.isFile());
+    assertEquals(0, run(Doclava.class.getName(), rendered, "-fromsnapshot", snapshot.getPath(),
+        "doclava.sample"));
+
+    assertSameTree(direct, recorded);
+    assertSameTree(direct, rendered);
+  }
+
+  /**
+   * Runs {@code mainClass} in a new JVM over the sample sources, writing docs, stubs and an API
+   * file under {@code out}, and returns its exit status.
+   */
+  private static int run(String mainClass, File out, String... args)
+      throws IOException, InterruptedException, URISyntaxException {
+    String javaHome = System.getProperty("java.home");
+    File tools = new File(new File(javaHome).getParentFile(), "lib" + File.separator + "tools.jar");
+    List<String> command = new ArrayList<String>();
+    command.add(javaHome + File.separator + "bin" + File.separator + "java");
+    command.add("-cp");
+    command.add(codeSourcePath(Doclava.class) + File.pathSeparator + tools.getPath());
+    command.add(mainClass);
+    command.add("-quiet");
+    command.add("-sourcepath");
+    command.add("test");
+    command.add("-d");
+    command.add(new File(out, "docs").getPath());
+    command.add("-stubs");
+    command.add(new File(out, "stubs").getPath());
+    command.add("-apixml");
+    command.add(new File(out, "api.xml").getPath());
+    command.addAll(Arrays.asList(args));
+
+    ProcessBuilder builder = new ProcessBuilder(command);
+    builder.redirectErrorStream(true);
+    Process process = builder.start();
+    BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+    String line;
+    while ((line = in.readLine()) != null) {
+      System.out.println(line);
+    }
+    in.close();
+    return process.waitFor();
+  }
+
+  /**
+   * Returns the jar or directory a class was loaded from. The test runner's own class path
+   * needn't include Doclava.
+   */
+  private static String codeSourcePath(Class<?> cls) throws URISyntaxException {
+    return new File(cls.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+  }
+
+  private static void assertSameTree(File expected, File actual) throws IOException {
+    assertEquals(actual.getPath(), expected.isDirectory(), actual.isDirectory());
+    if (expected.isDirectory()) {
+      String[] expectedNames = expected.list();
+      String[] actualNames = actual.list();
+      Arrays.sort(expectedNames);
+      Arrays.sort(actualNames);
+      assertEquals(actual.getPath(), Arrays.asList(expectedNames), Arrays.asList(actualNames));
+      for (String name : expectedNames) {
+        assertSameTree(new File(expected, name), new File(actual, name));
+      }
+    } else {
+      assertTrue(actual.getPath() + " differs from " + expected.getPath(),
+          Arrays.equals(read(expected), read(actual)));
+    }
+  }
+
+  private static byte[] read(File file) throws IOException {
+    byte[] bytes = new byte[(int) file.length()];
+    InputStream in = new FileInputStream(file);
+    try {
+      int offset = 0;
+      int n;
+      while (offset < bytes.length && (n = in.read(bytes, offset, bytes.length - offset)) > 0) {
+        offset += n;
+      }
+    } finally {
+      in.close();
+    }
+    return bytes;
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
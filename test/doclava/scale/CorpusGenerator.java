@@ -0,0 +1,473 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package doclava.scale;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates a synthetic API of any size for scale testing: Java sources with heavy javadoc, and
+ * the API XML that Doclava should produce for them.
+ *
+ * <p>Types come in packages of {@link #TYPES_PER_PACKAGE}. Within a package, every tenth type is
+ * an interface and the others form inheritance chains nine classes deep. The first class of each
+ * chain implements the interface before it, and the middle class of each chain is generic.
+ * Members include generic methods, varargs, checked exceptions and deprecations.
+ *
+ * <p>Two API files are written. {@code api-current.xml} describes the sources as they are.
+ * {@code api-previous.xml} describes an earlier version, for {@code -since}. That version lacks
+ * the last tenth of the packages, one class in every chain, and the {@code group} methods.
+ *
+ * <pre>
+ * usage: CorpusGenerator &lt;types&gt; &lt;directory&gt;
+ * </pre>
+ */
+public class CorpusGenerator {
+  public static final int TYPES_PER_PACKAGE = 50;
+  private static final int FIELDS_PER_CLASS = 4;
+
+  private final int mTypes;
+  private final int mPackages;
+
+  public CorpusGenerator(int types) {
+    mTypes = types;
+    mPackages = (types + TYPES_PER_PACKAGE - 1) / TYPES_PER_PACKAGE;
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("usage: CorpusGenerator <types> <directory>");
+      System.exit(2);
+    }
+    new CorpusGenerator(Integer.parseInt(args[0])).generate(new File(args[1]));
+  }
+
+  /** Returns the names of the generated packages. */
+  public List<String> packageNames() {
+    List<String> names = new ArrayList<String>();
+    for (int p = 0; p < mPackages; p++) {
+      names.add(packageName(p));
+    }
+    return names;
+  }
+
+  /**
+   * Writes the sources to {@code dir/src}, and the API files to {@code dir/api-current.xml} and
+   * {@code dir/api-previous.xml}.
+   */
+  public void generate(File dir) throws IOException {
+    File src = new File(dir, "src");
+    Writer current = open(new File(dir, "api-current.xml"));
+    Writer previous = open(new File(dir, "api-previous.xml"));
+    try {
+      current.write("<api>\n");
+      previous.write("<api>\n");
+      for (int p = 0; p < mPackages; p++) {
+        boolean inPrevious = p < mPackages - mPackages / 10;
+        String pkg = packageName(p);
+        current.write("<package name=\"" + pkg + "\"\n>\n");
+        if (inPrevious) {
+          previous.write("<package name=\"" + pkg + "\"\n>\n");
+        }
+
+        int types = Math.min(TYPES_PER_PACKAGE, mTypes - p * TYPES_PER_PACKAGE);
+        for (int j = 0; j < types; j++) {
+          Type type = new Type(p, j, types);
+          Writer source = open(new File(src, pkg.replace('.', File.separatorChar)
+              + File.separator + type.name + ".java"));
+          try {
+            source.write(type.source());
+          } finally {
+            source.close();
+          }
+          current.write(type.xml(false));
+          if (inPrevious && j % 10 != 8) {
+            previous.write(type.xml(true));
+          }
+        }
+
+        current.write("</package>\n");
+        if (inPrevious) {
+          previous.write("</package>\n");
+        }
+      }
+      current.write("</api>\n");
+      previous.write("</api>\n");
+    } finally {
+      current.close();
+      previous.close();
+    }
+  }
+
+  static String packageName(int p) {
+    return "scale.p" + p;
+  }
+
+  static String typeName(int j) {
+    return (j % 10 == 9 ? "Listener" : "Type") + j;
+  }
+
+  private static Writer open(File file) throws IOException {
+    file.getParentFile().mkdirs();
+    return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+  }
+
+  private static String escapeXml(String s) {
+    return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+  }
+
+  /**
+   * One generated type, which produces both its source and its API XML so that the two always
+   * agree.
+   */
+  private final class Type {
+    final int mPackage;
+    final int mIndex;
+    final int mTypesInPackage;
+    final String pkg;
+    final String name;
+    final boolean isInterface;
+    final boolean isGeneric;
+
+    private final StringBuilder mSource = new StringBuilder();
+    private final StringBuilder mXml = new StringBuilder();
+    private final StringBuilder mPreviousXml = new StringBuilder();
+
+    Type(int p, int j, int typesInPackage) {
+      mPackage = p;
+      mIndex = j;
+      mTypesInPackage = typesInPackage;
+      pkg = packageName(p);
+      name = typeName(j);
+      isInterface = j % 10 == 9;
+      isGeneric = j % 10 == 5;
+    }
+
+    String source() {
+      build();
+      return mSource.toString();
+    }
+
+    String xml(boolean previous) {
+      build();
+      return previous ? mPreviousXml.toString() : mXml.toString();
+    }
+
+    /** Returns the name of another type in the package, for links. */
+    private String other(int offset) {
+      return typeName((mIndex + offset) % mTypesInPackage);
+    }
+
+    /** Returns the qualified name of a type in the next package, for links across packages. */
+    private String remote() {
+      int p = (mPackage + 1) * TYPES_PER_PACKAGE < mTypes ? mPackage + 1 : 0;
+      return packageName(p) + "." + typeName(0);
+    }
+
+    private void build() {
+      if (mSource.length() > 0) {
+        return;
+      }
+      mSource.append("package ").append(pkg).append(";\n\n");
+      if (isInterface) {
+        buildInterface();
+      } else {
+        buildClass();
+      }
+    }
+
+    private void buildInterface() {
+      javadoc("", "A listener for the events of {@link " + other(1) + "}.\n\n"
+          + "<p>Implementations are called on the thread that fired the event, so they\n"
+          + "should return quickly. See {@link " + remote() + "} for a class in\n"
+          + "another package that works the same way.\n\n"
+          + "@see " + other(2) + "\n");
+      mSource.append("public interface ").append(name).append(" {\n");
+      String classXml = "<interface name=\"" + name + "\"\n abstract=\"true\"\n static=\"false\"\n"
+          + " final=\"false\"\n deprecated=\"not deprecated\"\n visibility=\"public\"\n>\n";
+      both(classXml);
+
+      eventMethod(true);
+      convertMethod(true);
+
+      mSource.append("}\n");
+      both("</interface>\n");
+    }
+
+    private void buildClass() {
+      boolean root = mIndex % 10 == 0;
+      String superclass = root ? null : typeName(mIndex - 1);
+      String implemented = root && mIndex > 0 ? typeName(mIndex - 1) : null;
+
+      javadoc("", "A generated class, number " + mIndex + " of package {@link " + pkg + "}.\n\n"
+          + "<p>It " + (root ? "starts a chain of subclasses" : "extends {@link " + superclass
+          + "}") + " and is used together with\n"
+          + "{@link " + other(3) + "} and {@link " + remote() + "}. A typical use:\n\n"
+          + "<pre>\n" + name + " item = " + name + ".create" + mIndex + "(10);\n"
+          + "item.describe" + mIndex + "(2, \"-\");\n</pre>\n\n"
+          + "<p>Instances are not thread safe; callers must synchronize access to them with\n"
+          + "{@code synchronized} or a lock of their own.\n\n"
+          + "@see " + other(1) + "\n@see " + remote() + "\n");
+
+      mSource.append("public class ").append(name);
+      if (isGeneric) {
+        mSource.append("<T extends java.lang.Comparable<T>>");
+      }
+      if (superclass != null) {
+        mSource.append(" extends ").append(superclass);
+        if (mIndex % 10 == 6) {
+          mSource.append("<java.lang.String>");
+        }
+      }
+      if (implemented != null) {
+        mSource.append(" implements ").append(implemented);
+      }
+      mSource.append(" {\n");
+
+      both("<class name=\"" + name + "\"\n extends=\""
+          + (superclass == null ? "java.lang.Object" : pkg + "." + superclass) + "\"\n"
+          + " abstract=\"false\"\n static=\"false\"\n final=\"false\"\n"
+          + " deprecated=\"not deprecated\"\n visibility=\"public\"\n>\n");
+      if (implemented != null) {
+        both("<implements name=\"" + pkg + "." + implemented + "\">\n</implements>\n");
+      }
+
+      constructor(superclass != null);
+      countMethod();
+      describeMethod();
+      createMethod();
+      groupMethod();
+      loadMethod();
+      namesMethod();
+      if (mIndex % 7 == 3) {
+        deprecatedMethod();
+      }
+      if (isGeneric) {
+        firstMethod();
+      }
+      if (implemented != null) {
+        eventMethod(false);
+        convertMethod(false);
+      }
+      for (int f = 0; f < FIELDS_PER_CLASS; f++) {
+        constantField(f);
+      }
+      sizeField();
+
+      mSource.append("}\n");
+      both("</class>\n");
+    }
+
+    private void constructor(boolean hasSuperclass) {
+      javadoc("  ", "Creates an instance holding {@code size} items, named {@code name}.\n\n"
+          + "@param size the number of items; must not be negative\n"
+          + "@param name the name shown by {@link #describe" + mIndex + "(int, String)}\n"
+          + "@throws IllegalArgumentException if {@code size} is negative\n");
+      mSource.append("  public ").append(name).append("(int size, java.lang.String name) {\n");
+      if (hasSuperclass) {
+        mSource.append("    super(size, name);\n");
+      }
+      mSource.append("  }\n\n");
+      both("<constructor name=\"" + name + "\"\n type=\"" + pkg + "." + name + "\"\n"
+          + " static=\"false\"\n final=\"false\"\n deprecated=\"not deprecated\"\n"
+          + " visibility=\"public\"\n>\n"
+          + parameter("size", "int") + parameter("name", "java.lang.String")
+          + "</constructor>\n");
+    }
+
+    private void countMethod() {
+      javadoc("  ", "Returns the number of items, as given to the constructor.\n\n"
+          + "@return the number of items, never negative\n");
+      mSource.append("  public int count").append(mIndex).append("() {\n    return 0;\n  }\n\n");
+      both(method("count" + mIndex, "int", false, false, false) + "</method>\n");
+    }
+
+    private void describeMethod() {
+      javadoc("  ", "Returns a description of this object, one item per line. Each line starts\n"
+          + "with {@code indent} spaces and then {@code prefix}. The items are listed in the\n"
+          + "order of {@link #count" + mIndex + "()}, and items that are themselves\n"
+          + "{@link " + other(2) + "}s are described recursively.\n\n"
+          + "@param indent the number of spaces at the start of each line\n"
+          + "@param prefix the text after the spaces, such as {@code \"- \"}\n"
+          + "@return the description; empty if there are no items\n"
+          + "@see #create" + mIndex + "(int)\n");
+      mSource.append("  public java.lang.String describe").append(mIndex)
+          .append("(int indent, java.lang.String prefix) {\n    return prefix;\n  }\n\n");
+      both(method("describe" + mIndex, "java.lang.String", false, false, false)
+          + parameter("indent", "int") + parameter("prefix", "java.lang.String") + "</method>\n");
+    }
+
+    private void createMethod() {
+      javadoc("  ", "Creates an empty instance with room for {@code size} items.\n\n"
+          + "@param size the number of items to make room for\n"
+          + "@return a new instance, never {@code null}\n");
+      mSource.append("  public static ").append(name).append(" create").append(mIndex)
+          .append("(int size) {\n    return null;\n  }\n\n");
+      both(method("create" + mIndex, pkg + "." + name, false, true, false)
+          + parameter("size", "int") + "</method>\n");
+    }
+
+    private void groupMethod() {
+      javadoc("  ", "Groups {@code values} under {@code key}. The lists in the result keep the\n"
+          + "order of {@code values}; use {@link java.util.Collections#sort(java.util.List)}\n"
+          + "to sort them.\n\n"
+          + "@param values the values to group\n"
+          + "@param key the key to group them under\n"
+          + "@return a new map from {@code key} to the values\n"
+          + "@since 2\n");
+      mSource.append("  public <K, V> java.util.Map<K, java.util.List<V>> group").append(mIndex)
+          .append("(java.util.Collection<V> values, K key) {\n    return null;\n  }\n\n");
+      // group methods are new in the current version
+      mXml.append(method("group" + mIndex, "java.util.Map<K, java.util.List<V>>", false, false,
+          false) + parameter("values", "java.util.Collection<V>") + parameter("key", "K")
+          + "</method>\n");
+    }
+
+    private void loadMethod() {
+      javadoc("  ", "Loads the items from {@code file}, replacing the current ones.\n\n"
+          + "<p>The file is read with the platform's default encoding. Lines that start\n"
+          + "with {@code #} are comments and are skipped.\n\n"
+          + "@param file the file to read\n"
+          + "@throws java.io.IOException if the file can't be read\n"
+          + "@see #describe" + mIndex + "(int, String)\n");
+      mSource.append("  public void load").append(mIndex)
+          .append("(java.io.File file) throws java.io.IOException {\n  }\n\n");
+      both(method("load" + mIndex, "void", false, false, false) + parameter("file", "java.io.File")
+          + "<exception name=\"IOException\" type=\"java.io.IOException\">\n</exception>\n"
+          + "</method>\n");
+    }
+
+    private void namesMethod() {
+      javadoc("  ", "Returns the names of the items that match any of {@code patterns}, in the\n"
+          + "order they were added.\n\n"
+          + "@param patterns regular expressions, as understood by\n"
+          + "    {@code java.util.regex.Pattern}\n"
+          + "@return the matching names\n");
+      mSource.append("  public java.lang.String[] names").append(mIndex)
+          .append("(java.lang.String... patterns) {\n    return patterns;\n  }\n\n");
+      both(method("names" + mIndex, "java.lang.String[]", false, false, false)
+          + parameter("patterns", "java.lang.String...") + "</method>\n");
+    }
+
+    private void deprecatedMethod() {
+      javadoc("  ", "Returns true if the items have been loaded.\n\n"
+          + "@return true once {@link #load" + mIndex + "(java.io.File)} has returned\n"
+          + "@deprecated check {@link #count" + mIndex + "()} instead\n");
+      mSource.append("  @Deprecated\n  public boolean isReady").append(mIndex)
+          .append("() {\n    return false;\n  }\n\n");
+      both(method("isReady" + mIndex, "boolean", false, false, true) + "</method>\n");
+    }
+
+    private void firstMethod() {
+      javadoc("  ", "Returns the smallest of {@code items}.\n\n"
+          + "@param items the items to compare; must not be empty\n"
+          + "@return the smallest item\n");
+      mSource.append("  public T first(java.util.List<? extends T> items) {\n"
+          + "    return items.get(0);\n  }\n\n");
+      both(method("first", "T", false, false, false)
+          + parameter("items", "java.util.List<? extends T>") + "</method>\n");
+    }
+
+    private void eventMethod(boolean isAbstract) {
+      int j = isInterface ? mIndex : mIndex - 1;
+      javadoc("  ", "Called when an event happens.\n\n"
+          + "@param code the event code, one of the {@code MAX} constants\n"
+          + "@param message a message for the log, or {@code null}\n");
+      if (isAbstract) {
+        mSource.append("  void onEvent").append(j)
+            .append("(int code, java.lang.String message);\n\n");
+      } else {
+        mSource.append("  public void onEvent").append(j)
+            .append("(int code, java.lang.String message) {\n  }\n\n");
+      }
+      both(method("onEvent" + j, "void", isAbstract, false, false) + parameter("code", "int")
+          + parameter("message", "java.lang.String") + "</method>\n");
+    }
+
+    private void convertMethod(boolean isAbstract) {
+      int j = isInterface ? mIndex : mIndex - 1;
+      javadoc("  ", "Converts the last event to {@code type}.\n\n"
+          + "@param type the class to convert to\n"
+          + "@return the converted event, or {@code null} if there was none\n");
+      if (isAbstract) {
+        mSource.append("  <T> T convert").append(j).append("(java.lang.Class<T> type);\n\n");
+      } else {
+        mSource.append("  public <T> T convert").append(j)
+            .append("(java.lang.Class<T> type) {\n    return null;\n  }\n\n");
+      }
+      both(method("convert" + j, "T", isAbstract, false, false)
+          + parameter("type", "java.lang.Class<T>") + "</method>\n");
+    }
+
+    private void constantField(int f) {
+      int value = mIndex * 10 + f;
+      javadoc("  ", "The largest value for setting " + f + ", used by {@link #describe" + mIndex
+          + "(int, String)}.\n");
+      mSource.append("  public static final int MAX_").append(f).append(" = ").append(value)
+          .append(";\n\n");
+      both("<field name=\"MAX_" + f + "\"\n type=\"int\"\n transient=\"false\"\n"
+          + " volatile=\"false\"\n value=\"" + value + "\"\n static=\"true\"\n final=\"true\"\n"
+          + " deprecated=\"not deprecated\"\n visibility=\"public\"\n>\n</field>\n");
+    }
+
+    private void sizeField() {
+      javadoc("  ", "The number of items, for subclasses.\n");
+      mSource.append("  protected int size").append(mIndex).append(";\n\n");
+      both("<field name=\"size" + mIndex + "\"\n type=\"int\"\n transient=\"false\"\n"
+          + " volatile=\"false\"\n static=\"false\"\n final=\"false\"\n"
+          + " deprecated=\"not deprecated\"\n visibility=\"protected\"\n>\n</field>\n");
+    }
+
+    private String method(String methodName, String returnType, boolean isAbstract,
+        boolean isStatic, boolean deprecated) {
+      return "<method name=\"" + methodName + "\"\n return=\"" + escapeXml(returnType) + "\"\n"
+          + " abstract=\"" + isAbstract + "\"\n native=\"false\"\n synchronized=\"false\"\n"
+          + " static=\"" + isStatic + "\"\n final=\"false\"\n"
+          + " deprecated=\"" + (deprecated ? "deprecated" : "not deprecated") + "\"\n"
+          + " visibility=\"public\"\n>\n";
+    }
+
+    private String parameter(String parameterName, String type) {
+      return "<parameter name=\"" + parameterName + "\" type=\"" + escapeXml(type) + "\">\n"
+          + "</parameter>\n";
+    }
+
+    private void javadoc(String indent, String text) {
+      mSource.append(indent).append("/**\n");
+      for (String line : text.split("\n")) {
+        if (line.length() == 0) {
+          mSource.append(indent).append(" *\n");
+        } else {
+          mSource.append(indent).append(" * ").append(line).append('\n');
+        }
+      }
+      mSource.append(indent).append(" */\n");
+    }
+
+    /** Adds XML that both versions of the API have. */
+    private void both(String xml) {
+      mXml.append(xml);
+      mPreviousXml.append(xml);
+    }
+  }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package doclava.scale;
+
+import com.google.doclava.Converter;
+import com.google.doclava.Doclava;
+import com.google.doclava.SinceTagger;
+import com.google.doclava.apicheck.ApiCheck;
+import com.google.doclava.apicheck.ApiInfo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs Doclava, SinceTagger and ApiCheck on generated APIs of increasing size, and reports the
+ * time and peak heap of each step, and the heap still live after it. After the doclet step that
+ * is the model Doclava keeps for the rest of the run, which is what the large APIs are short of.
+ * This is not a unit test: the larger corpora take minutes and gigabytes. Run it with
+ * {@code ant scale}.
+ *
+ * <p>Doclava keeps its model in static fields, so each corpus is documented in a JVM of its own,
+ * started with {@code -Xmx} set to the {@code scale.heap} system property (4g by default). The
+ * steps for one corpus are:
+ * <ol>
+ * <li>doclet: the full doclet, with {@code -since} and {@code -apixml}
+ * <li>since: tagging the model again with {@link SinceTagger}, from the previous API file
+ * <li>apicheck: parsing the generated API file and the one the doclet wrote, and checking that
+ * they agree
+ * </ol>
+ *
+ * <pre>
+ * usage: ScaleSuite &lt;directory&gt; &lt;types&gt;...
+ * </pre>
+ */
+public class ScaleSuite {
+  private static final String RESULT = "scale-result\t";
+
+  public static void main(String[] args) throws Exception {
+    if (args.length == 3 && args[0].equals("-corpus")) {
+      System.exit(runCorpus(new File(args[1]), Integer.parseInt(args[2])) ? 0 : 1);
+    }
+    if (args.length < 2) {
+      System.err.println("usage: ScaleSuite <directory> <types>...");
+      System.exit(2);
+    }
+
+    File dir = new File(args[0]);
+    List<String> report = new ArrayList<String>();
+    report.add("types\tstep\tmillis\tpeak heap MB\tlive heap MB");
+    boolean ok = true;
+    for (int i = 1; i < args.length; i++) {
+      int types = Integer.parseInt(args[i]);
+      File corpus = new File(dir, "corpus-" + types);
+      if (!new File(corpus, "api-previous.xml").isFile()) {
+        System.out.println("Generating " + types + " types in " + corpus);
+        new CorpusGenerator(types).generate(corpus);
+      }
+      ok &= forkCorpus(corpus, types, report);
+    }
+
+    Writer out = new OutputStreamWriter(new FileOutputStream(new File(dir, "results.txt")),
+        "UTF-8");
+    try {
+      for (String line : report) {
+        System.out.println(line);
+        out.write(line);
+        out.write('\n');
+      }
+    } finally {
+      out.close();
+    }
+    System.exit(ok ? 0 : 1);
+  }
+
+  /**
+   * Runs the steps for one corpus in a new JVM, adding the results it prints to {@code report}.
+   */
+  private static boolean forkCorpus(File corpus, int types, List<String> report)
+      throws IOException, InterruptedException {
+    String java = System.getProperty("java.home") + File.separator + "bin" + File.separator
+        + "java";
+    ProcessBuilder builder = new ProcessBuilder(java,
+        "-Xmx" + System.getProperty("scale.heap", "4g"),
+        "-cp", System.getProperty("java.class.path"),
+        ScaleSuite.class.getName(), "-corpus", corpus.getPath(), String.valueOf(types));
+    builder.redirectErrorStream(true);
+    Process process = builder.start();
+    BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+    String line;
+    while ((line = in.readLine()) != null) {
+      if (line.startsWith(RESULT)) {
+        report.add(line.substring(RESULT.length()));
+      } else if (!line.startsWith("Loading source") && !line.startsWith("Constructing")) {
+        System.out.println(line);
+      }
+    }
+    in.close();
+    return process.waitFor() == 0;
+  }
+
+  private static boolean runCorpus(File corpus, int types) throws Exception {
+    String previousApi = new File(corpus, "api-previous.xml").getPath();
+    String currentApi = new File(corpus, "api-current.xml").getPath();
+    String docletApi = new File(corpus, "out" + File.separator + "api.xml").getPath();
+    HeapSampler heap = new HeapSampler();
+    heap.start();
+
+    List<String> args = new ArrayList<String>();
+    args.add("-quiet");
+    args.add("-sourcepath");
+    args.add(new File(corpus, "src").getPath());
+    args.add("-d");
+    args.add(new File(corpus, "out" + File.separator + "docs").getPath());
+    args.add("-apixml");
+    args.add(docletApi);
+    args.add("-since");
+    args.add(previousApi);
+    args.add("1");
+    args.add("-apiversion");
+    args.add("2");
+    args.add("-hdf");
+    args.add("project.name");
+    args.add("Scale");
+    args.addAll(new CorpusGenerator(types).packageNames());
+
+    long start = heap.reset();
+    int status = com.sun.tools.javadoc.Main.execute("javadoc", Doclava.class.getName(),
+        ScaleSuite.class.getClassLoader(), args.toArray(new String[args.size()]));
+    report(types, "doclet", start, heap);
+    if (status != 0) {
+      System.err.println("doclet failed with status " + status);
+      return false;
+    }
+
+    start = heap.reset();
+    SinceTagger sinceTagger = new SinceTagger();
+    sinceTagger.addVersion(previousApi, "1");
+    sinceTagger.addVersion(docletApi, "2");
+    sinceTagger.tagAll(Converter.rootClasses());
+    report(types, "since", start, heap);
+
+    start = heap.reset();
+    ApiInfo expected = new ApiCheck().parseApi(currentApi);
+    ApiInfo actual = new ApiCheck().parseApi(docletApi);
+    boolean consistent = expected.isConsistent(actual);
+    report(types, "apicheck", start, heap);
+    if (!consistent) {
+      System.err.println("the doclet's API file doesn't match " + currentApi);
+      return false;
+    }
+    return true;
+  }
+
+  private static void report(int types, String step, long start, HeapSampler heap) {
+    long millis = (System.nanoTime() - start) / 1000000;
+    long peak = heap.peak();
+    System.out.println(RESULT + types + "\t" + step + "\t" + millis + "\t"
+        + peak / (1024 * 1024) + "\t" + heap.live() / (1024 * 1024));
+  }
+
+  /**
+   * Polls the heap size while a step runs. Sampling misses short spikes, but the peaks that
+   * matter at these sizes come from the model, which lasts for the whole step.
+   */
+  private static final class HeapSampler extends Thread {
+    private final MemoryMXBean mMemory = ManagementFactory.getMemoryMXBean();
+    private long mPeak;
+
+    HeapSampler() {
+      super("heap sampler");
+      setDaemon(true);
+    }
+
+    /** Collects garbage, starts a new peak, and returns the time to measure the step from. */
+    long reset() {
+      System.gc();
+      synchronized (this) {
+        mPeak = mMemory.getHeapMemoryUsage().getUsed();
+      }
+      return System.nanoTime();
+    }
+
+    /** Collects garbage and returns the heap that is still in use. */
+    long live() {
+      System.gc();
+      return mMemory.getHeapMemoryUsage().getUsed();
+    }
+
+    synchronized long peak() {
+      sample();
+      return mPeak;
+    }
+
+    private synchronized void sample() {
+      long used = mMemory.getHeapMemoryUsage().getUsed();
+      if (used > mPeak) {
+        mPeak = used;
+      }
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        sample();
+        try {
+          Thread.sleep(10);
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+    }
+  }
+}